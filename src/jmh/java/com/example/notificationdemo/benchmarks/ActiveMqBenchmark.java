@@ -0,0 +1,78 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.consumers.ActiveMqConsumer;
+import com.example.notificationdemo.notifications.producers.ActiveMqEventProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jms.JMSException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ActiveMQ producer and a full producer to consumer round trip
+ * against an embedded, non persistent broker reached through the in-VM transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dactivemq.host=vm://benchmark?broker.persistent=false&broker.useJmx=false")
+public class ActiveMqBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final Payload payload = Payload.sample(1);
+    private final List<Payload> batch = Payload.batch(BATCH_SIZE);
+    private ActiveMqEventProducer<Payload> producer;
+    private ActiveMqEventProducer<Payload> roundTripProducer;
+    private ActiveMqConsumer roundTripConsumer;
+
+    @Setup
+    public void setUp() throws JMSException {
+        // nobody subscribes to this topic, so the broker discards the messages
+        producer = new ActiveMqEventProducer<>("benchmark", "benchmark-topic");
+        roundTripProducer = new ActiveMqEventProducer<>("benchmark-round-trip", "benchmark-round-trip-topic");
+        roundTripConsumer = new ActiveMqConsumer("benchmark-round-trip", "benchmark-round-trip-topic");
+    }
+
+    @TearDown
+    public void tearDown() {
+        producer.close();
+        roundTripProducer.close();
+    }
+
+    @Benchmark
+    public void issue() throws NotificationException {
+        producer.issue(payload);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void issueAll() throws NotificationException {
+        producer.issueAll(batch);
+    }
+
+    @Benchmark
+    public String roundTrip() throws NotificationException, JMSException {
+        roundTripProducer.issue(payload);
+        String message;
+        do {
+            message = roundTripConsumer.readMessage();
+        } while (message == null);
+        return message;
+    }
+}
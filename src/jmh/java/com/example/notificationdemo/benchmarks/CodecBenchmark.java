@@ -0,0 +1,62 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.serialization.PayloadCodec;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link PayloadCodec}s registered in {@link PayloadCodecs}: encoding, typed decoding
+ * and the transcoding to JSON text the string based consumers go through.
+ * The payload size of each codec is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"application/json", "application/cbor", "application/x-jackson-smile"})
+    private String contentType;
+
+    private final Payload payload = Payload.sample(1);
+    private PayloadCodec codec;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws NotificationException {
+        codec = PayloadCodecs.forContentType(contentType);
+        serialized = codec.serialize(payload);
+        System.out.println(String.format("%s payload size: %d bytes", contentType, serialized.length));
+    }
+
+    @Benchmark
+    public byte[] serialize() throws NotificationException {
+        return codec.serialize(payload);
+    }
+
+    @Benchmark
+    public Payload deserialize() throws NotificationException {
+        return codec.deserialize(serialized, Payload.class);
+    }
+
+    @Benchmark
+    public String toText() throws NotificationException {
+        return codec.toText(serialized);
+    }
+}
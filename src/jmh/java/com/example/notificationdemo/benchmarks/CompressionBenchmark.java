@@ -0,0 +1,58 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressor;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link PayloadCompressor}s registered in {@link PayloadCompressors} on a batch of notifications
+ * serialized as a single JSON payload of a few tens of KB. The compression ratio of each encoding is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"gzip", "lz4", "zstd"})
+    private String encoding;
+
+    private PayloadCompressor compressor;
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() throws NotificationException {
+        compressor = PayloadCompressors.forEncoding(encoding);
+        payload = PayloadCodecs.JSON.serialize(Payload.batch(100));
+        compressed = compressor.compress(payload);
+        System.out.println(String.format("%s: %d bytes compressed to %d bytes", encoding, payload.length, compressed.length));
+    }
+
+    @Benchmark
+    public byte[] compress() throws NotificationException {
+        return compressor.compress(payload);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws NotificationException {
+        return compressor.decompress(compressed);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.utils.OffsetTracker;
+import com.example.notificationdemo.utils.OrderedWorkerPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parallel Kafka consumer hot path without a broker: a polled batch is tracked,
+ * dispatched on the {@link OrderedWorkerPool} by key and its committable offset is collected once every record is done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumerDispatchBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int KEYS = 64;
+
+    @Param({"1", "4", "8"})
+    private int workers;
+
+    private OrderedWorkerPool pool;
+    private OffsetTracker tracker;
+    private long nextOffset;
+
+    @Setup
+    public void setUp() {
+        pool = new OrderedWorkerPool("benchmark", workers);
+        tracker = new OffsetTracker();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.shutdown(1000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long dispatch() {
+        long last = nextOffset + BATCH_SIZE - 1;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long offset = nextOffset++;
+            tracker.track(offset);
+            pool.submit(offset % KEYS, () -> tracker.complete(offset));
+        }
+        long committable = -1;
+        while (committable < last) {
+            long contiguous = tracker.pollContiguous();
+            if (contiguous >= 0) {
+                committable = contiguous;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return committable;
+    }
+}
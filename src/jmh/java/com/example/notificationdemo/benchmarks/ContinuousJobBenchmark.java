@@ -0,0 +1,82 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.utils.ContinuousJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how fast a {@link ContinuousJob} in drain mode picks up the work handed to it,
+ * i.e. the dispatch overhead the consumers pay on top of the broker client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dconsumers.idle_backoff=1", "-Dconsumers.max_idle_backoff=1"})
+public class ContinuousJobBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private QueueDrainingJob job;
+
+    @Setup
+    public void setUp() {
+        job = new QueueDrainingJob();
+        job.startDraining();
+    }
+
+    @TearDown
+    public void tearDown() {
+        job.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long drain() {
+        long target = job.processed.get() + BATCH_SIZE;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            job.queue.offer(i);
+        }
+        while (job.processed.get() < target) {
+            Thread.onSpinWait();
+        }
+        return target;
+    }
+
+    private static class QueueDrainingJob extends ContinuousJob {
+
+        private final Queue<Integer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong processed = new AtomicLong();
+
+        @Override
+        public void doWork() {
+            drain();
+        }
+
+        @Override
+        public int drain() {
+            int drained = 0;
+            while (queue.poll() != null) {
+                drained++;
+            }
+            processed.addAndGet(drained);
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.producers.EndpointEventProducer;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link EndpointEventProducer} against a local {@link MockWebServer} answering 200 to every call,
+ * so the numbers include the HTTP client, the connection reuse and the loopback round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dendpoint.http.version=HTTP_1_1")
+public class EndpointEventProducerBenchmark {
+
+    private final Payload payload = Payload.sample(1);
+    private MockWebServer server;
+    private EndpointEventProducer<Payload> producer;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        server.start();
+        producer = new EndpointEventProducer<>(new EndpointEventProducer.Endpoint(server.url("/notifications").url()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public void issue() throws NotificationException {
+        producer.issue(payload);
+    }
+
+    @Benchmark
+    public Ack issueAsync() {
+        return producer.issueAsync(payload).join();
+    }
+}
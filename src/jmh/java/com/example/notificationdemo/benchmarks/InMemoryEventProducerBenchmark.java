@@ -0,0 +1,73 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.consumers.InMemoryConsumer;
+import com.example.notificationdemo.notifications.inmemory.WaitStrategy;
+import com.example.notificationdemo.notifications.producers.InMemoryEventProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link InMemoryEventProducer} fan-out to three {@link InMemoryConsumer}s,
+ * with one and with several producing threads, for every wait strategy of the consumers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InMemoryEventProducerBenchmark {
+
+    private static final int CONSUMERS = 3;
+
+    @Param({"busy_spin", "yielding", "sleeping", "blocking"})
+    public String waitStrategy;
+
+    private final Payload payload = Payload.sample(1);
+    private final List<InMemoryConsumer<Payload>> consumers = new ArrayList<>();
+    private InMemoryEventProducer<Payload> producer;
+
+    @Setup
+    public void setUp() {
+        producer = new InMemoryEventProducer<>("benchmark", 65536, WaitStrategy.forName(waitStrategy), 5000);
+        for (int i = 0; i < CONSUMERS; i++) {
+            InMemoryConsumer<Payload> consumer = InMemoryConsumer.createConsumerFromProducer(producer);
+            consumer.onReadStart(body -> { });
+            consumers.add(consumer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        consumers.forEach(InMemoryConsumer::stop);
+        consumers.clear();
+    }
+
+    @Benchmark
+    public void issue() throws NotificationException {
+        producer.issue(payload);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void issueContended() throws NotificationException {
+        producer.issue(payload);
+    }
+}
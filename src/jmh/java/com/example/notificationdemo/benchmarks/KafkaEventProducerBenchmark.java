@@ -0,0 +1,73 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.producers.KafkaEventProducer;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link KafkaEventProducer} overhead (serialization, record building, callbacks)
+ * on top of an in-memory {@link MockProducer} completing every send straight away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KafkaEventProducerBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final Payload payload = Payload.sample(1);
+    private final List<Payload> batch = Payload.batch(BATCH_SIZE);
+    private MockProducer<String, byte[]> mockProducer;
+    private KafkaEventProducer<Payload> producer;
+
+    @Setup
+    public void setUp() {
+        mockProducer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+        producer = new KafkaEventProducer<>("benchmark", "benchmark-topic", mockProducer);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearHistory() {
+        // the mock producer keeps every record it has been sent
+        mockProducer.clear();
+    }
+
+    @Benchmark
+    public void issue() throws NotificationException {
+        producer.issue(payload);
+    }
+
+    @Benchmark
+    public Ack issueAsync() {
+        return producer.issueAsync(payload).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void issueAll() throws NotificationException {
+        producer.issueAll(batch);
+    }
+}
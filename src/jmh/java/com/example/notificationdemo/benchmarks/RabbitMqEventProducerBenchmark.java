@@ -0,0 +1,78 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.FakeRabbitMqConnectionFactory;
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.RabbitMqConnectionManager;
+import com.example.notificationdemo.notifications.producers.RabbitMqEventProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Measures the {@link RabbitMqEventProducer} overhead (serialization, channel pooling, confirm tracking)
+ * on top of fake connections whose channels confirm every message as soon as it is published.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Drabbitmq.enable.exchange.create=false")
+public class RabbitMqEventProducerBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"false", "true"})
+    private String confirms;
+
+    private final Payload payload = Payload.sample(1);
+    private final List<Payload> batch = Payload.batch(BATCH_SIZE);
+    private RabbitMqConnectionManager connectionManager;
+    private RabbitMqEventProducer<Payload> producer;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException, TimeoutException {
+        System.setProperty("rabbitmq.publisher.confirms", confirms);
+        connectionManager = new RabbitMqConnectionManager(new FakeRabbitMqConnectionFactory(), 2, 64, 5000);
+        producer = RabbitMqEventProducer.create("benchmark", "benchmark-exchange", connectionManager);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionManager.close();
+    }
+
+    @Benchmark
+    public void issue() throws NotificationException {
+        producer.issue(payload);
+    }
+
+    @Benchmark
+    public Ack issueAsync() {
+        return producer.issueAsync(payload).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void issueAll() throws NotificationException {
+        producer.issueAll(batch);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.serialization.PayloadCodec;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of a notification body, the step every producer goes through before hitting the wire:
+ * a mapper built per call, the shared mapper writing a String (then encoded to bytes, as the JMS and SNS paths do)
+ * the shared mapper or a typed writer writing the bytes straight away and the producers JSON {@link PayloadCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private final Payload payload = Payload.sample(1);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectWriter writer = mapper.writerFor(Payload.class);
+    private final PayloadCodec serializer = PayloadCodecs.JSON;
+
+    @Benchmark
+    public String newMapperPerCall() throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(payload);
+    }
+
+    @Benchmark
+    public String sharedMapperToString() throws JsonProcessingException {
+        return mapper.writeValueAsString(payload);
+    }
+
+    @Benchmark
+    public byte[] sharedMapperToStringToBytes() throws JsonProcessingException {
+        return mapper.writeValueAsString(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] sharedMapperToBytes() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] typedWriterToBytes() throws JsonProcessingException {
+        return writer.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] payloadSerializer() throws NotificationException {
+        return serializer.serialize(payload);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.notificationdemo.benchmarks;
+
+import com.example.notificationdemo.benchmarks.support.Payload;
+import com.example.notificationdemo.benchmarks.support.StubSnsClient;
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.producers.SnsEventProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link SnsEventProducer} overhead (serialization, request building, batching)
+ * on top of a {@link StubSnsClient} accepting every request without any I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnsEventProducerBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final Payload payload = Payload.sample(1);
+    private final List<Payload> batch = Payload.batch(BATCH_SIZE);
+    private SnsEventProducer<Payload> producer;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        producer = SnsEventProducer.createProducer("benchmark", new StubSnsClient(), "arn:aws:sns:eu-west-1:000000000000:benchmark-topic");
+    }
+
+    @Benchmark
+    public void issue() throws NotificationException {
+        producer.issue(payload);
+    }
+
+    @Benchmark
+    public Ack issueAsync() {
+        return producer.issueAsync(payload).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void issueAll() throws NotificationException {
+        producer.issueAll(batch);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.notificationdemo.benchmarks.support;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FakeRabbitMqConnectionFactory opens in-process stand-ins for the AMQP connections: their channels accept every
+ * publish without any I/O and, in confirm mode, confirm each message as soon as it is published.
+ * This way the benchmarks measure the producer overhead (serialization, channel pooling, confirm tracking) only.
+ */
+public class FakeRabbitMqConnectionFactory extends ConnectionFactory {
+
+    @Override
+    public Connection newConnection(String connectionName) {
+        AtomicInteger channelNumbers = new AtomicInteger();
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createChannel":
+                    return proxy(Channel.class, new FakeChannel(channelNumbers.incrementAndGet()));
+                case "isOpen":
+                    return true;
+                default:
+                    return identityOrDefault(proxy, method, args);
+            }
+        });
+    }
+
+    private static class FakeChannel implements InvocationHandler {
+
+        private final int channelNumber;
+        private boolean confirms;
+        private long lastSequenceNumber;
+        private ConfirmListener confirmListener;
+
+        FakeChannel(int channelNumber) {
+            this.channelNumber = channelNumber;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+            switch (method.getName()) {
+                case "basicPublish":
+                    if (confirms) {
+                        lastSequenceNumber++;
+                        if (confirmListener != null) {
+                            confirmListener.handleAck(lastSequenceNumber, false);
+                        }
+                    }
+                    return null;
+                case "getNextPublishSeqNo":
+                    return confirms ? lastSequenceNumber + 1 : 0L;
+                case "confirmSelect":
+                    confirms = true;
+                    return null;
+                case "addConfirmListener":
+                    if (args[0] instanceof ConfirmListener) {
+                        confirmListener = (ConfirmListener) args[0];
+                    }
+                    return null;
+                case "getChannelNumber":
+                    return channelNumber;
+                case "isOpen":
+                    return true;
+                default:
+                    return identityOrDefault(proxy, method, args);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeRabbitMqConnectionFactory.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object identityOrDefault(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Fake" + method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) return false;
+                if (returnType == int.class) return 0;
+                if (returnType == long.class) return 0L;
+                return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.notificationdemo.benchmarks.support;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payload is a notification DTO shaped like the ones issued in production: a few scalar fields and a small map.
+ */
+public class Payload {
+
+    private String id;
+    private String recipient;
+    private String text;
+    private long timestamp;
+    private Map<String, String> attributes;
+
+    public Payload() {
+    }
+
+    public Payload(String id, String recipient, String text, long timestamp, Map<String, String> attributes) {
+        this.id = id;
+        this.recipient = recipient;
+        this.text = text;
+        this.timestamp = timestamp;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns a sample payload of about 300 bytes once serialized.
+     *
+     * @param index the index distinguishing the sample
+     * @return the sample payload
+     */
+    public static Payload sample(int index) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("channel", "email");
+        attributes.put("locale", "en_GB");
+        attributes.put("priority", "high");
+        return new Payload("notification-" + index, "user-" + index + "@example.com",
+                "Your order #" + index + " has been shipped and it will be delivered within three working days.",
+                1_650_000_000_000L + index, attributes);
+    }
+
+    /**
+     * Returns a batch of sample payloads.
+     *
+     * @param size the number of payloads
+     * @return the batch of payloads
+     */
+    public static List<Payload> batch(int size) {
+        List<Payload> payloads = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            payloads.add(sample(i));
+        }
+        return payloads;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+}
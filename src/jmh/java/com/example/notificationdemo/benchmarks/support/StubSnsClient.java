@@ -0,0 +1,56 @@
+package com.example.notificationdemo.benchmarks.support;
+
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
+import software.amazon.awssdk.services.sns.model.PublishRequest;
+import software.amazon.awssdk.services.sns.model.PublishResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * StubSnsClient is an in-process stand-in for AWS SNS: it accepts every publish request without any I/O
+ * and completes its future at once, so the benchmarks measure the producer overhead only.
+ */
+public class StubSnsClient implements SnsAsyncClient {
+
+    private static final SdkHttpResponse OK = SdkHttpResponse.builder().statusCode(200).build();
+
+    private final AtomicLong messageIds = new AtomicLong();
+
+    @Override
+    public CompletableFuture<PublishResponse> publish(PublishRequest publishRequest) {
+        return CompletableFuture.completedFuture((PublishResponse) PublishResponse.builder()
+                .messageId(String.valueOf(messageIds.incrementAndGet()))
+                .sdkHttpResponse(OK)
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<PublishBatchResponse> publishBatch(PublishBatchRequest publishBatchRequest) {
+        List<PublishBatchResultEntry> successful = publishBatchRequest.publishBatchRequestEntries().stream()
+                .map(entry -> PublishBatchResultEntry.builder()
+                        .id(entry.id())
+                        .messageId(String.valueOf(messageIds.incrementAndGet()))
+                        .build())
+                .collect(Collectors.toList());
+        return CompletableFuture.completedFuture((PublishBatchResponse) PublishBatchResponse.builder()
+                .successful(successful)
+                .sdkHttpResponse(OK)
+                .build());
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
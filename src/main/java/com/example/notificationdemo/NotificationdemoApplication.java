@@ -46,7 +46,7 @@ public class NotificationdemoApplication {
 		RabbitMqConsumer rabbitMqConsumer2 = RabbitMqConsumer.create("rabbitmq-test", rabbitMqProducer.getExchange());
 
 		DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-			String message = new String(delivery.getBody(), "UTF-8");
+			String message = RabbitMqConsumer.text(delivery);
 			System.out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
 			System.out.println(String.format("Message received from RabbitMQ consumerTag %s: ", consumerTag));
 			System.out.println(message);
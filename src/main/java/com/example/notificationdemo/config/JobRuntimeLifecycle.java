@@ -0,0 +1,43 @@
+package com.example.notificationdemo.config;
+
+import com.example.notificationdemo.utils.JobRuntime;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hooks the {@link JobRuntime} into the Spring context lifecycle: when the context is closed
+ * (e.g. on SIGTERM during a rolling deploy) the consumers are drained and stopped,
+ * then the producers and the shared connections are closed.
+ * It is stopped in the first shutdown phase, while the web server still serves the endpoint notifications.
+ */
+@Component
+public class JobRuntimeLifecycle implements SmartLifecycle {
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (!JobRuntime.getInstance().shutdown()) {
+                System.err.println("Shutdown completed with messages still being consumed");
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.notificationdemo.config;
+
+import com.example.notificationdemo.notifications.metrics.NotificationMetrics;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.CollectorRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the registry of the {@link NotificationMetrics} to Spring Boot Actuator, in place of the one it would create:
+ * the producers and consumers may record before the context starts, and '/actuator/prometheus' scrapes
+ * their meters together with the JVM and web server ones bound by Actuator.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public PrometheusMeterRegistry prometheusMeterRegistry() {
+        return NotificationMetrics.getRegistry();
+    }
+
+    @Bean
+    public CollectorRegistry collectorRegistry() {
+        return NotificationMetrics.getRegistry().getPrometheusRegistry();
+    }
+}
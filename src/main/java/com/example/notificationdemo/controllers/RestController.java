@@ -1,5 +1,6 @@
 package com.example.notificationdemo.controllers;
 
+import com.example.notificationdemo.notifications.metrics.ConsumerMetrics;
 import com.example.notificationdemo.notifications.producers.EndpointEventProducer;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -10,6 +11,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 @org.springframework.web.bind.annotation.RestController
 public class RestController {
 
+    private final ConsumerMetrics callbackMetrics = ConsumerMetrics.of("endpoint", "callback");
+
     /**
      * Callback API
      *
@@ -18,8 +21,10 @@ public class RestController {
      */
     @PostMapping("/callback")
     public String callbackAPI(@RequestBody String messageBody) {
+        long start = System.nanoTime();
         System.out.println("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
         System.out.println(String.format("Callback-API received this message: %s", messageBody));
+        callbackMetrics.handled(start);
         return "OK";
     }
 }
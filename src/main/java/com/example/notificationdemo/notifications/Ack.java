@@ -0,0 +1,45 @@
+package com.example.notificationdemo.notifications;
+
+/**
+ * Ack represents the acknowledgement returned by a channel once a notification has been accepted.
+ */
+public class Ack {
+
+    private final String destination;
+    private final String messageId;
+
+    /**
+     * Basic constructor for {@link Ack}.
+     *
+     * @param destination the topic, exchange or endpoint the notification has been issued to
+     * @param messageId the identifier assigned to the notification by the channel (if any)
+     */
+    public Ack(String destination, String messageId) {
+        this.destination = destination;
+        this.messageId = messageId;
+    }
+
+    /**
+     * Returns the destination the notification has been issued to.
+     *
+     * @return the destination
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Returns the identifier assigned to the notification by the channel.
+     * It can be null when the channel doesn't assign any.
+     *
+     * @return the message id
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ack{destination=%s, messageId=%s}", destination, messageId);
+    }
+}
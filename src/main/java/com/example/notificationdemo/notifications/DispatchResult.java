@@ -0,0 +1,68 @@
+package com.example.notificationdemo.notifications;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * DispatchResult is the aggregated outcome of a {@link FanOutDispatcher} dispatch:
+ * the acknowledgement of every channel which succeeded and the failure of every channel which failed or timed out.
+ */
+public class DispatchResult {
+
+    private final Map<String, Ack> acks;
+    private final Map<String, Throwable> failures;
+
+    public DispatchResult(Map<String, Ack> acks, Map<String, Throwable> failures) {
+        this.acks = Collections.unmodifiableMap(acks);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Returns the acknowledgements of the channels which succeeded, by channel name.
+     *
+     * @return the acknowledgements
+     */
+    public Map<String, Ack> getAcks() {
+        return acks;
+    }
+
+    /**
+     * Returns the failures of the channels which failed or timed out, by channel name.
+     *
+     * @return the failures
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns whether every channel succeeded.
+     *
+     * @return true if no channel failed
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Throws a {@link NotificationException} listing the failed channels, if any.
+     *
+     * @throws NotificationException if some channel failed
+     */
+    public void throwIfFailed() throws NotificationException {
+        if (!failures.isEmpty()) {
+            throw new NotificationException(failures.entrySet().stream()
+                    .map(failure -> String.format("%s: %s", failure.getKey(), failure.getValue().getMessage()))
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchResult{" +
+                "acks=" + acks +
+                ", failures=" + failures +
+                '}';
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.notificationdemo.notifications;
+
+import com.example.notificationdemo.notifications.serialization.EncodedPayload;
+import com.example.notificationdemo.notifications.serialization.PayloadEncoder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * EncodedPayloadProducer is an {@link EventProducer} which can also send a payload encoded beforehand,
+ * so that a body sent to several producers sharing the same {@link PayloadEncoder} is encoded only once.
+ *
+ * @param <T> the type of the object it must be notified as body of the message.
+ */
+public interface EncodedPayloadProducer<T> extends EventProducer<T> {
+
+    /**
+     * Returns the encoder the producer runs the bodies through.
+     *
+     * @return the payload encoder
+     */
+    PayloadEncoder getEncoder();
+
+    /**
+     * Emits the already encoded notification without blocking the calling thread on the broker I/O.
+     * The payload must have been encoded by an encoder equal to {@link #getEncoder()}.
+     *
+     * @param body the object the payload was encoded from, used for the message metadata (e.g. the key)
+     * @param payload the encoded payload
+     * @return the future completed with the channel acknowledgement,
+     * or exceptionally with a {@link NotificationException} if the send failed
+     */
+    CompletableFuture<Ack> issueEncodedAsync(T body, EncodedPayload payload);
+}
@@ -1,10 +1,14 @@
 package com.example.notificationdemo.notifications;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface representing the generic async event it must be notified to listeners.
+ * Producers holding broker connections register themselves to the JobRuntime, which closes them on shutdown.
  * @param <T> the type of the object it must be notified as body of the message.
  */
-public interface EventProducer<T> {
+public interface EventProducer<T> extends AutoCloseable {
 
     /**
      * Emits the notification on a given channel
@@ -12,4 +16,36 @@ public interface EventProducer<T> {
      * @throws NotificationException
      */
     void issue(T body) throws NotificationException;
+
+    /**
+     * Emits the notification on a given channel without blocking the calling thread on the broker I/O.
+     * The number of pending sends is bounded: when the bound is reached the caller is slowed down
+     * and, past the configured timeout, the returned future fails.
+     * @param body the object to be sent as payload
+     * @return the future completed with the channel acknowledgement,
+     * or exceptionally with a {@link NotificationException} if the send failed
+     */
+    CompletableFuture<Ack> issueAsync(T body);
+
+    /**
+     * Emits a batch of notifications on a given channel.
+     * The default implementation issues the bodies one by one: implementations override it
+     * to take advantage of the native batch path of their broker.
+     * @param bodies the objects to be sent as payloads
+     * @throws NotificationException
+     */
+    default void issueAll(Collection<T> bodies) throws NotificationException {
+        if (bodies == null) throw new NotificationException("Bodies are null");
+        for (T body : bodies) {
+            issue(body);
+        }
+    }
+
+    /**
+     * Waits for the pending sends to complete and releases the broker connections of the producer.
+     * The default implementation holds nothing to release.
+     */
+    @Override
+    default void close() {
+    }
 }
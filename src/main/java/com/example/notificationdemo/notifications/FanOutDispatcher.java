@@ -0,0 +1,183 @@
+package com.example.notificationdemo.notifications;
+
+import com.example.notificationdemo.notifications.serialization.EncodedPayload;
+import com.example.notificationdemo.notifications.serialization.PayloadEncoder;
+import com.example.notificationdemo.utils.Properties;
+import com.example.notificationdemo.utils.SharedExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * FanOutDispatcher issues the same notification to several {@link EventProducer}s (the channels) at once,
+ * so that the notify latency is the one of the slowest channel instead of the sum of all of them.
+ * The body is encoded once for all the {@link EncodedPayloadProducer}s sharing the same encoder.
+ * Channels are isolated: each one is started on the shared I/O executor, so a channel blocked on its broker
+ * can't delay the others, and each one has its own timeout.
+ * The dispatch never fails as a whole: the {@link DispatchResult} reports the outcome of every channel.
+ *
+ * @param <T> the type of the object it must be notified as body of the message.
+ */
+public class FanOutDispatcher<T> {
+
+    private final Map<String, Channel<T>> channels = new LinkedHashMap<>();
+    private final long defaultTimeout;
+    private final Executor executor;
+
+    /**
+     * Basic constructor for {@link FanOutDispatcher}.
+     * The channels added without a timeout time out after 'notifications.fanout.timeout' milliseconds.
+     */
+    public FanOutDispatcher() {
+        this(Long.parseLong(Properties.get("notifications.fanout.timeout")), SharedExecutors.blockingIo());
+    }
+
+    /**
+     * Constructor for {@link FanOutDispatcher}.
+     *
+     * @param defaultTimeout the timeout in milliseconds of the channels added without a timeout
+     * @param executor the executor starting the sends of the channels
+     */
+    public FanOutDispatcher(long defaultTimeout, Executor executor) {
+        this.defaultTimeout = defaultTimeout;
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a channel with the default timeout.
+     *
+     * @param name the channel name, reported in the {@link DispatchResult}
+     * @param producer the channel producer
+     * @return this dispatcher
+     */
+    public FanOutDispatcher<T> addChannel(String name, EventProducer<T> producer) {
+        return addChannel(name, producer, this.defaultTimeout);
+    }
+
+    /**
+     * Adds a channel.
+     *
+     * @param name the channel name, reported in the {@link DispatchResult}
+     * @param producer the channel producer
+     * @param timeout the time in milliseconds after which the channel send is reported as failed
+     * @return this dispatcher
+     */
+    public synchronized FanOutDispatcher<T> addChannel(String name, EventProducer<T> producer, long timeout) {
+        if (channels.containsKey(name)) throw new IllegalArgumentException("Channel " + name + " already added");
+        channels.put(name, new Channel<>(producer, timeout));
+        return this;
+    }
+
+    /**
+     * Removes a channel.
+     *
+     * @param name the channel name
+     */
+    public synchronized void removeChannel(String name) {
+        channels.remove(name);
+    }
+
+    /**
+     * Issues the notification on all the channels.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed, once every channel succeeded, failed or timed out, with the outcome of each channel
+     */
+    public CompletableFuture<DispatchResult> dispatch(T body) {
+        Map<String, Channel<T>> channels;
+        synchronized (this) {
+            channels = new LinkedHashMap<>(this.channels);
+        }
+        Map<PayloadEncoder, EncodedPayload> payloads = new HashMap<>();
+        Map<String, Ack> acks = new ConcurrentHashMap<>();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> outcomes = new ArrayList<>(channels.size());
+
+        for (Map.Entry<String, Channel<T>> entry : channels.entrySet()) {
+            String name = entry.getKey();
+            Channel<T> channel = entry.getValue();
+            CompletableFuture<Ack> ack;
+            try {
+                ack = send(channel.producer, body, payloads);
+            } catch (NotificationException e) {
+                ack = CompletableFuture.failedFuture(e);
+            }
+            outcomes.add(ack.orTimeout(channel.timeout, TimeUnit.MILLISECONDS).handle((result, t) -> {
+                if (t == null) {
+                    acks.put(name, result);
+                } else {
+                    failures.put(name, cause(t, name, channel.timeout));
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(outcomes.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> new DispatchResult(acks, failures));
+    }
+
+    /**
+     * Issues the notification on all the channels and waits for the outcome of each one.
+     *
+     * @param body the object to be sent as payload
+     * @return the outcome of each channel
+     */
+    public DispatchResult dispatchAndWait(T body) {
+        return dispatch(body).join();
+    }
+
+    /**
+     * Returns the names of the channels.
+     *
+     * @return the channel names
+     */
+    public synchronized List<String> getChannels() {
+        return Collections.unmodifiableList(new ArrayList<>(channels.keySet()));
+    }
+
+    private CompletableFuture<Ack> send(EventProducer<T> producer, T body, Map<PayloadEncoder, EncodedPayload> payloads) throws NotificationException {
+        if (producer instanceof EncodedPayloadProducer) {
+            if (body == null) throw new NotificationException("Body is null");
+            EncodedPayloadProducer<T> encodedProducer = (EncodedPayloadProducer<T>) producer;
+            // the body is encoded on the calling thread, once per distinct encoder
+            EncodedPayload payload = payloads.get(encodedProducer.getEncoder());
+            if (payload == null) {
+                payload = encodedProducer.getEncoder().encode(body);
+                payloads.put(encodedProducer.getEncoder(), payload);
+            }
+            EncodedPayload encoded = payload;
+            return CompletableFuture.supplyAsync(() -> encodedProducer.issueEncodedAsync(body, encoded), executor)
+                    .thenCompose(Function.identity());
+        }
+        return CompletableFuture.supplyAsync(() -> producer.issueAsync(body), executor)
+                .thenCompose(Function.identity());
+    }
+
+    private static Throwable cause(Throwable t, String name, long timeout) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        if (cause instanceof TimeoutException) {
+            return new NotificationException(String.format("Channel %s timed out after %d ms", name, timeout));
+        }
+        return cause;
+    }
+
+    private static class Channel<T> {
+        private final EventProducer<T> producer;
+        private final long timeout;
+
+        Channel(EventProducer<T> producer, long timeout) {
+            this.producer = producer;
+            this.timeout = timeout;
+        }
+    }
+}
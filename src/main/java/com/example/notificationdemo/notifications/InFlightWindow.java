@@ -0,0 +1,129 @@
+package com.example.notificationdemo.notifications;
+
+import com.example.notificationdemo.utils.Properties;
+import com.example.notificationdemo.utils.SharedExecutors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * InFlightWindow bounds the number of asynchronous sends which are pending at the same time.
+ * When the window is full the caller waits for a slot to be released (backpressure) up to
+ * the configured timeout, then the send fails instead of piling up in memory.
+ */
+public class InFlightWindow {
+
+    private final int capacity;
+    private final long acquireTimeout;
+    private final Semaphore permits;
+
+    /**
+     * Returns a new {@link InFlightWindow} sized with the 'notifications.async.max_in_flight'
+     * and 'notifications.async.acquire_timeout' properties.
+     *
+     * @return the InFlightWindow
+     */
+    public static InFlightWindow fromProperties() {
+        return new InFlightWindow(
+                Integer.parseInt(Properties.get("notifications.async.max_in_flight")),
+                Long.parseLong(Properties.get("notifications.async.acquire_timeout")));
+    }
+
+    /**
+     * Basic constructor for {@link InFlightWindow}.
+     *
+     * @param capacity the maximum number of pending sends
+     * @param acquireTimeout the maximum time in milliseconds to wait for a free slot
+     */
+    public InFlightWindow(int capacity, long acquireTimeout) {
+        this.capacity = capacity;
+        this.acquireTimeout = acquireTimeout;
+        this.permits = new Semaphore(capacity);
+    }
+
+    /**
+     * Starts the send returned by the given supplier as soon as a slot is available.
+     * The slot is released when the returned future completes.
+     *
+     * @param send the action starting the asynchronous send
+     * @param <R> the type of the send result
+     * @return the future of the send
+     */
+    public <R> CompletableFuture<R> submit(Supplier<CompletableFuture<R>> send) {
+        try {
+            if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(new NotificationException(
+                        String.format("Timed out waiting for one of the %d in-flight slots", capacity)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new NotificationException(e.getMessage()));
+        }
+        CompletableFuture<R> result;
+        try {
+            result = send.get();
+        } catch (RuntimeException e) {
+            permits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((r, t) -> permits.release());
+        return result;
+    }
+
+    /**
+     * Runs the given blocking task on the shared I/O executor as soon as a slot is available.
+     *
+     * @param task the blocking task
+     * @param <R> the type of the task result
+     * @return the future of the task
+     */
+    public <R> CompletableFuture<R> execute(Callable<R> task) {
+        return submit(() -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, SharedExecutors.blockingIo()));
+    }
+
+    /**
+     * Waits for the pending sends to complete. The sends started meanwhile are waited for too.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if no send is pending
+     */
+    public boolean awaitEmpty(long timeout) {
+        try {
+            if (permits.tryAcquire(capacity, timeout, TimeUnit.MILLISECONDS)) {
+                permits.release(capacity);
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of sends currently pending.
+     *
+     * @return the in-flight sends
+     */
+    public int getInFlight() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * Returns the maximum number of pending sends.
+     *
+     * @return the capacity of the window
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.notificationdemo.notifications;
+
+/**
+ * KeyExtractor extracts the business key of a notification body (an order id, a customer id...).
+ * The producers of the brokers which partition the messages use it to route all the notifications
+ * with the same key to the same partition, so that they are consumed in order.
+ *
+ * @param <T> the payload object type issued
+ */
+@FunctionalInterface
+public interface KeyExtractor<T> {
+
+    /**
+     * Returns the business key of the given body.
+     *
+     * @param body the notification body
+     * @return the key, or null to let the broker spread the notifications freely
+     */
+    String extractKey(T body);
+
+    /**
+     * Returns the {@link KeyExtractor} which doesn't key the notifications.
+     *
+     * @param <T> the payload object type issued
+     * @return the key extractor always returning null
+     */
+    static <T> KeyExtractor<T> none() {
+        return body -> null;
+    }
+}
@@ -8,4 +8,8 @@ public class NotificationException extends Exception {
     public NotificationException(String message) {
         super(message);
     }
+
+    public NotificationException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
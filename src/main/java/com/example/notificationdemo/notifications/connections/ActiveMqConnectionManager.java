@@ -0,0 +1,144 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.example.notificationdemo.utils.JobRuntime;
+import com.example.notificationdemo.utils.Properties;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ActiveMqConnectionManager is the process-wide owner of the JMS connections of the producers.
+ * It multiplexes all the producers on a small, fixed number of connections
+ * and hands out sessions from two pools: one for single sends and one of transacted sessions for batches.
+ * With 'activemq.producer.async_send' the messages are sent without waiting for the broker receipt,
+ * bounded by a producer window of 'activemq.producer.window_size' bytes not yet acknowledged by the broker.
+ * The shared instance is registered to the {@link JobRuntime}, which closes it once producers and consumers are closed.
+ */
+public final class ActiveMqConnectionManager implements AutoCloseable {
+
+    private static volatile ActiveMqConnectionManager instance;
+
+    private final ActiveMQConnectionFactory factory;
+    // the slots are read without the lock, so a connection is published to the other threads once fully started
+    private final AtomicReferenceArray<ActiveMQConnection> connections;
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final ActiveMqSessionPool sessionPool;
+    private final ActiveMqSessionPool transactedPool;
+
+    /**
+     * Returns the shared {@link ActiveMqConnectionManager}, configured through the 'activemq.*' properties.
+     *
+     * @return the shared ActiveMqConnectionManager
+     */
+    public static ActiveMqConnectionManager getInstance() {
+        if (instance == null) {
+            synchronized (ActiveMqConnectionManager.class) {
+                if (instance == null) {
+                    ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(
+                            Properties.get("activemq.username"), Properties.get("activemq.password"), Properties.get("activemq.host"));
+                    factory.setUseAsyncSend(Boolean.parseBoolean(Properties.get("activemq.producer.async_send")));
+                    factory.setProducerWindowSize(Integer.parseInt(Properties.get("activemq.producer.window_size")));
+                    // the messages are never modified once sent, so they don't need to be copied
+                    factory.setCopyMessageOnSend(false);
+                    instance = new ActiveMqConnectionManager(factory,
+                            Integer.parseInt(Properties.get("activemq.pool.connections")),
+                            Integer.parseInt(Properties.get("activemq.pool.max_sessions")),
+                            Long.parseLong(Properties.get("activemq.pool.borrow_timeout")),
+                            Boolean.parseBoolean(Properties.get("activemq.producer.persistent")));
+                    JobRuntime.getInstance().registerResource(instance);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Basic constructor for {@link ActiveMqConnectionManager}.
+     * The connections are opened lazily, at the first session request.
+     *
+     * @param factory the factory of the JMS connections
+     * @param connections the number of connections to be multiplexed
+     * @param maxSessions the maximum number of sessions of each pool
+     * @param borrowTimeout the maximum time in milliseconds to wait for a pooled session
+     * @param persistent whether the messages are sent with persistent delivery mode
+     */
+    public ActiveMqConnectionManager(ActiveMQConnectionFactory factory, int connections, int maxSessions, long borrowTimeout, boolean persistent) {
+        this.factory = factory;
+        this.connections = new AtomicReferenceArray<>(connections);
+        this.sessionPool = new ActiveMqSessionPool(this, false, persistent, maxSessions, borrowTimeout);
+        this.transactedPool = new ActiveMqSessionPool(this, true, persistent, maxSessions, borrowTimeout);
+    }
+
+    /**
+     * Returns one of the shared connections, already started.
+     * Whoever creates a session on it owns the session, while the connection stays owned by the manager.
+     *
+     * @return a shared connection
+     * @throws JMSException
+     */
+    public Connection getConnection() throws JMSException {
+        int index = Math.floorMod(nextConnection.getAndIncrement(), connections.length());
+        ActiveMQConnection connection = connections.get(index);
+        if (connection == null || connection.isClosed() || connection.isTransportFailed()) {
+            synchronized (this) {
+                connection = connections.get(index);
+                if (connection == null || connection.isClosed() || connection.isTransportFailed()) {
+                    connection = (ActiveMQConnection) factory.createConnection();
+                    connection.start();
+                    connections.set(index, connection);
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Returns the pool of the sessions used for single sends.
+     *
+     * @return the session pool
+     */
+    public ActiveMqSessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    /**
+     * Returns the pool of the transacted sessions used to send batches.
+     *
+     * @return the transacted session pool
+     */
+    public ActiveMqSessionPool getTransactedPool() {
+        return transactedPool;
+    }
+
+    /**
+     * Returns whether the messages are sent without waiting for the broker receipt.
+     *
+     * @return true if the sends are asynchronous
+     */
+    public boolean isAsyncSend() {
+        return factory.isUseAsyncSend();
+    }
+
+    /**
+     * Closes all the pooled sessions and the shared connections.
+     */
+    @Override
+    public synchronized void close() {
+        sessionPool.close();
+        transactedPool.close();
+        for (int i = 0; i < connections.length(); i++) {
+            ActiveMQConnection connection = connections.getAndSet(i, null);
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.example.notificationdemo.utils.Properties;
+
+import javax.jms.InvalidDestinationException;
+
+/**
+ * ActiveMqDestinations maps the topic names of the producers and consumers to the ActiveMQ destinations.
+ * With 'activemq.virtual_topics' the producers publish on the virtual topic 'VirtualTopic.<topic-name>':
+ * it is still an ordinary topic for its subscribers, while the broker also forwards each message
+ * to the queue 'Consumer.<group>.VirtualTopic.<topic-name>' of every consumer group,
+ * whose members compete for the messages as on any other queue.
+ */
+public final class ActiveMqDestinations {
+
+    /** the prefix of the topics the broker treats as virtual topics by default */
+    public static final String VIRTUAL_TOPIC_PREFIX = "VirtualTopic.";
+    /** the prefix of the queues the broker forwards the virtual topic messages to by default */
+    public static final String GROUP_QUEUE_PREFIX = "Consumer.";
+
+    private ActiveMqDestinations() {
+    }
+
+    /**
+     * Returns whether the producers publish on virtual topics.
+     *
+     * @return true if the 'activemq.virtual_topics' property is set to 'true'
+     */
+    public static boolean isVirtualTopics() {
+        return Boolean.parseBoolean(Properties.get("activemq.virtual_topics"));
+    }
+
+    /**
+     * Returns the name of the topic the producers publish on.
+     *
+     * @param topicName the topic name
+     * @return the virtual topic name if virtual topics are enabled, otherwise the topic name itself
+     */
+    public static String topicName(String topicName) {
+        if (isVirtualTopics() && !topicName.startsWith(VIRTUAL_TOPIC_PREFIX)) {
+            return VIRTUAL_TOPIC_PREFIX + topicName;
+        }
+        return topicName;
+    }
+
+    /**
+     * Returns the name of the queue shared by the consumers of the given group.
+     *
+     * @param group the consumer group
+     * @param topicName the topic name
+     * @return the queue name
+     * @throws InvalidDestinationException if virtual topics are not enabled or the group name contains a dot
+     */
+    public static String groupQueueName(String group, String topicName) throws InvalidDestinationException {
+        if (!isVirtualTopics()) {
+            throw new InvalidDestinationException("consumer groups require 'activemq.virtual_topics' to be enabled");
+        }
+        // the broker matches the group as a single segment of the queue name
+        if (group.isEmpty() || group.contains(".")) {
+            throw new InvalidDestinationException("invalid consumer group '" + group + "'");
+        }
+        return GROUP_QUEUE_PREFIX + group + "." + topicName(topicName);
+    }
+
+    /**
+     * Appends to a destination name the option limiting the messages the broker pushes to a consumer ahead of their acknowledgement.
+     *
+     * @param destinationName the destination name
+     * @param prefetch the prefetch size, the broker default if not positive
+     * @return the destination name with its options
+     */
+    public static String withPrefetch(String destinationName, int prefetch) {
+        return prefetch > 0 ? destinationName + "?consumer.prefetchSize=" + prefetch : destinationName;
+    }
+}
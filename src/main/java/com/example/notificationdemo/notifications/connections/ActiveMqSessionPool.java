@@ -0,0 +1,174 @@
+package com.example.notificationdemo.notifications.connections;
+
+import org.apache.activemq.ActiveMQSession;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ResourceAllocationException;
+import javax.jms.Session;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ActiveMqSessionPool lends the sessions of the {@link ActiveMqConnectionManager} connections,
+ * each one with its own anonymous {@link MessageProducer} sending to any destination.
+ * A session is used by one thread at a time, since JMS sessions are single threaded.
+ * The pool grows up to its maximum size, then the borrowers wait for a session to be released.
+ */
+public class ActiveMqSessionPool {
+
+    /**
+     * Action to be performed with a borrowed session.
+     *
+     * @param <R> the type of the action result
+     */
+    @FunctionalInterface
+    public interface SessionFunction<R> {
+        R apply(PooledSession session) throws JMSException;
+    }
+
+    /**
+     * A pooled JMS session together with its anonymous producer.
+     */
+    public static class PooledSession {
+
+        private final Session session;
+        private final MessageProducer producer;
+
+        PooledSession(Session session, MessageProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public MessageProducer getProducer() {
+            return producer;
+        }
+
+        boolean isOpen() {
+            return !(session instanceof ActiveMQSession) || !((ActiveMQSession) session).isClosed();
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private final ActiveMqConnectionManager manager;
+    private final boolean transacted;
+    private final boolean persistent;
+    private final long borrowTimeout;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledSession> idleSessions = new LinkedBlockingDeque<>();
+
+    ActiveMqSessionPool(ActiveMqConnectionManager manager, boolean transacted, boolean persistent, int maxSessions, long borrowTimeout) {
+        this.manager = manager;
+        this.transacted = transacted;
+        this.persistent = persistent;
+        this.borrowTimeout = borrowTimeout;
+        this.permits = new Semaphore(maxSessions);
+    }
+
+    /**
+     * Borrows a session, opening a new one if no idle session is available.
+     * The session must be given back through {@link #release(PooledSession)}.
+     *
+     * @return the borrowed session
+     * @throws JMSException if no session became available in time or a new one can't be opened
+     */
+    public PooledSession borrow() throws JMSException {
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ResourceAllocationException("Timed out waiting for an ActiveMQ session");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for an ActiveMQ session");
+        }
+        try {
+            PooledSession session;
+            while ((session = idleSessions.pollFirst()) != null) {
+                if (session.isOpen()) return session;
+            }
+            Session jmsSession = transacted
+                    ? manager.getConnection().createSession(true, Session.SESSION_TRANSACTED)
+                    : manager.getConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = jmsSession.createProducer(null);
+            producer.setDeliveryMode(persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+            return new PooledSession(jmsSession, producer);
+        } catch (JMSException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed session back to the pool. Closed sessions are discarded.
+     *
+     * @param session the borrowed session
+     */
+    public void release(PooledSession session) {
+        if (session.isOpen()) {
+            // the most recently used session is lent first, so the idle ones can be left unused
+            idleSessions.offerFirst(session);
+        }
+        permits.release();
+    }
+
+    /**
+     * Closes a borrowed session which failed, instead of giving it back to the pool.
+     *
+     * @param session the borrowed session
+     */
+    public void discard(PooledSession session) {
+        session.close();
+        permits.release();
+    }
+
+    /**
+     * Performs the given action with a borrowed session, giving it back afterwards.
+     * The session is discarded if the action fails, since the failure may be due to the session itself.
+     *
+     * @param action the action to be performed
+     * @param <R> the type of the action result
+     * @return the result of the action
+     * @throws JMSException
+     */
+    public <R> R withSession(SessionFunction<R> action) throws JMSException {
+        PooledSession session = borrow();
+        R result;
+        try {
+            result = action.apply(session);
+        } catch (JMSException | RuntimeException e) {
+            discard(session);
+            throw e;
+        }
+        release(session);
+        return result;
+    }
+
+    /**
+     * Returns whether the sessions of this pool are transacted.
+     *
+     * @return true if the sessions are transacted
+     */
+    public boolean isTransacted() {
+        return transacted;
+    }
+
+    void close() {
+        PooledSession session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            session.close();
+        }
+    }
+}
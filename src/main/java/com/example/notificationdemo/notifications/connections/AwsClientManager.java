@@ -0,0 +1,157 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.example.notificationdemo.utils.JobRuntime;
+import com.example.notificationdemo.utils.Properties;
+import com.example.notificationdemo.utils.SharedExecutors;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.client.config.ClientAsyncConfiguration;
+import software.amazon.awssdk.core.client.config.SdkAdvancedAsyncClientOption;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.SnsAsyncClientBuilder;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * AwsClientManager is the process-wide owner of the AWS SNS and SQS clients.
+ * All the producers and consumers share one non-blocking client per service, both running on a single Netty HTTP engine:
+ * its event loop threads serve every request, and its pool keeps up to 'aws.http.max_concurrency' connections alive
+ * across requests, with TCP keep-alive, closing the ones idle for longer than 'aws.http.connection_max_idle'.
+ * Every SQS long poll holds a connection while it waits, so the pool must be larger than the number of pollers.
+ * The shared instance is registered to the {@link JobRuntime}, which closes it once producers and consumers are closed.
+ */
+public class AwsClientManager implements AutoCloseable {
+
+    private static volatile AwsClientManager instance;
+
+    private final SdkAsyncHttpClient httpClient;
+    private final SnsAsyncClient snsClient;
+    private final SqsAsyncClient sqsClient;
+
+    /**
+     * Returns the shared {@link AwsClientManager}, configured through the 'aws.*' properties.
+     *
+     * @return the shared AwsClientManager
+     */
+    public static AwsClientManager getInstance() {
+        if (instance == null) {
+            synchronized (AwsClientManager.class) {
+                if (instance == null) {
+                    SdkEventLoopGroup.Builder eventLoopGroup = SdkEventLoopGroup.builder();
+                    int eventLoopThreads = Integer.parseInt(Properties.get("aws.http.event_loop_threads"));
+                    if (eventLoopThreads > 0) {
+                        eventLoopGroup.numberOfThreads(eventLoopThreads);
+                    }
+                    SdkAsyncHttpClient httpClient = NettyNioAsyncHttpClient.builder()
+                            .maxConcurrency(Integer.parseInt(Properties.get("aws.http.max_concurrency")))
+                            .maxPendingConnectionAcquires(Integer.parseInt(Properties.get("aws.http.max_pending_acquires")))
+                            .connectionAcquisitionTimeout(Duration.ofMillis(Long.parseLong(Properties.get("aws.http.acquisition_timeout"))))
+                            .connectionMaxIdleTime(Duration.ofMillis(Long.parseLong(Properties.get("aws.http.connection_max_idle"))))
+                            .tcpKeepAlive(Boolean.parseBoolean(Properties.get("aws.http.tcp_keep_alive")))
+                            .eventLoopGroupBuilder(eventLoopGroup)
+                            .build();
+                    String endpoint = Properties.get("aws.endpoint");
+                    instance = new AwsClientManager(httpClient, endpoint != null ? URI.create(endpoint) : null);
+                    JobRuntime.getInstance().registerResource(instance);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Basic constructor for {@link AwsClientManager}.
+     *
+     * @param httpClient the HTTP engine shared by the clients, closed with the manager
+     * @param endpoint the endpoint overriding the default AWS one, like the localstack one, or null
+     */
+    public AwsClientManager(SdkAsyncHttpClient httpClient, URI endpoint) {
+        this.httpClient = httpClient;
+        // the futures are completed on the shared I/O executor instead of a pool of threads of each client
+        ClientAsyncConfiguration asyncConfiguration = ClientAsyncConfiguration.builder()
+                .advancedOption(SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR, SharedExecutors.blockingIo())
+                .build();
+        SnsAsyncClientBuilder snsClientBuilder = SnsAsyncClient.builder()
+                .httpClient(httpClient)
+                .asyncConfiguration(asyncConfiguration);
+        SqsAsyncClientBuilder sqsClientBuilder = SqsAsyncClient.builder()
+                .httpClient(httpClient)
+                .asyncConfiguration(asyncConfiguration);
+        if (endpoint != null) {
+            snsClientBuilder.endpointOverride(endpoint);
+            sqsClientBuilder.endpointOverride(endpoint);
+        }
+        this.snsClient = snsClientBuilder.build();
+        this.sqsClient = sqsClientBuilder.build();
+    }
+
+    /**
+     * Returns the shared AWS SNS client.
+     *
+     * @return the sns client
+     */
+    public SnsAsyncClient getSnsClient() {
+        return this.snsClient;
+    }
+
+    /**
+     * Returns the shared AWS SQS client.
+     *
+     * @return the sqs client
+     */
+    public SqsAsyncClient getSqsClient() {
+        return this.sqsClient;
+    }
+
+    /**
+     * Waits for the given request to complete, for the callers which need its response.
+     * A failed request throws the exception of the AWS SDK itself, like a blocking client would.
+     *
+     * @param response the future of the response
+     * @param <R> the type of the response
+     * @return the response
+     */
+    public static <R> R join(CompletableFuture<R> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the message of a failed request: the error message of AWS if it answered, otherwise the exception message,
+     * like the one of the {@link software.amazon.awssdk.core.exception.SdkClientException} of a network failure.
+     *
+     * @param e the exception of the failed request
+     * @return the error message
+     */
+    public static String errorMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof AwsServiceException && ((AwsServiceException) cause).awsErrorDetails() != null
+                && ((AwsServiceException) cause).awsErrorDetails().errorMessage() != null) {
+            return ((AwsServiceException) cause).awsErrorDetails().errorMessage();
+        }
+        return cause.getMessage();
+    }
+
+    /**
+     * Closes the clients and the HTTP engine they share.
+     */
+    @Override
+    public void close() {
+        this.snsClient.close();
+        this.sqsClient.close();
+        this.httpClient.close();
+    }
+}
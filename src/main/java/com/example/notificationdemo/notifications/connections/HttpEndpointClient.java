@@ -0,0 +1,152 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.utils.Properties;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpEndpointClient is the HTTP engine shared by all the endpoint producers.
+ * It wraps a single {@link HttpClient}, which keeps the connections alive and reuses them across the calls
+ * (negotiating HTTP/2 where the server supports it), and bounds the number of concurrent requests per host.
+ */
+public class HttpEndpointClient {
+
+    private static volatile HttpEndpointClient instance;
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final int maxConnectionsPerHost;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared {@link HttpEndpointClient}, configured through the 'endpoint.http.*' properties.
+     *
+     * @return the shared HttpEndpointClient
+     */
+    public static HttpEndpointClient getInstance() {
+        if (instance == null) {
+            synchronized (HttpEndpointClient.class) {
+                if (instance == null) {
+                    instance = new HttpEndpointClient(
+                            HttpClient.Version.valueOf(Properties.get("endpoint.http.version")),
+                            Duration.ofMillis(Long.parseLong(Properties.get("endpoint.http.connect_timeout"))),
+                            Duration.ofMillis(Long.parseLong(Properties.get("endpoint.http.request_timeout"))),
+                            Integer.parseInt(Properties.get("endpoint.http.max_connections_per_host")));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Basic constructor for {@link HttpEndpointClient}.
+     *
+     * @param version the preferred HTTP version, HTTP/2 falls back to HTTP/1.1 when the server doesn't support it
+     * @param connectTimeout the timeout to establish a new connection
+     * @param requestTimeout the timeout for a request to be answered
+     * @param maxConnectionsPerHost the maximum number of concurrent requests towards the same host
+     */
+    public HttpEndpointClient(HttpClient.Version version, Duration connectTimeout, Duration requestTimeout, int maxConnectionsPerHost) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns a new {@link HttpRequest.Builder} for the given URI with the configured request timeout.
+     *
+     * @param uri the URI to be called
+     * @return the request builder
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(requestTimeout);
+    }
+
+    /**
+     * Sends the request and waits for the response.
+     *
+     * @param request the request to be sent
+     * @return the response
+     * @throws NotificationException if the request fails or the endpoint answers with an error status
+     */
+    public HttpResponse<String> send(HttpRequest request) throws NotificationException {
+        Semaphore permits = acquire(request.uri());
+        try {
+            return checkStatus(httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+        } catch (IOException e) {
+            throw new NotificationException(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException(e.getMessage());
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends the request without blocking the calling thread on the I/O.
+     * The calling thread only waits when the per-host limit has been reached.
+     *
+     * @param request the request to be sent
+     * @return the future of the response, completed exceptionally with a {@link NotificationException}
+     * if the request fails or the endpoint answers with an error status
+     */
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+        Semaphore permits;
+        try {
+            permits = acquire(request.uri());
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, throwable) -> {
+            permits.release();
+            if (throwable != null) {
+                result.completeExceptionally(new NotificationException(throwable.getMessage()));
+                return;
+            }
+            try {
+                result.complete(checkStatus(response));
+            } catch (NotificationException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private Semaphore acquire(URI uri) throws NotificationException {
+        String host = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(maxConnectionsPerHost));
+        try {
+            if (!permits.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new NotificationException(String.format("Timed out waiting for a connection to %s", host));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationException(e.getMessage());
+        }
+        return permits;
+    }
+
+    private static HttpResponse<String> checkStatus(HttpResponse<String> response) throws NotificationException {
+        if (response.statusCode() >= 400) {
+            throw new NotificationException(String.format("Endpoint %s answered with status %d", response.uri(), response.statusCode()));
+        }
+        return response;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * RabbitMqChannelPool lends the channels of the {@link RabbitMqConnectionManager} connections.
+ * A channel is used by one thread at a time, since AMQP channels must not be shared for publishing.
+ * The pool grows up to its maximum size, then the borrowers wait for a channel to be released.
+ */
+public class RabbitMqChannelPool {
+
+    /**
+     * Action to be performed with a borrowed channel.
+     *
+     * @param <R> the type of the action result
+     */
+    @FunctionalInterface
+    public interface ChannelFunction<R> {
+        R apply(Channel channel) throws IOException, InterruptedException, TimeoutException;
+    }
+
+    private final RabbitMqConnectionManager manager;
+    private final boolean confirms;
+    private final long borrowTimeout;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Channel> idleChannels = new LinkedBlockingDeque<>();
+    private final Map<Channel, RabbitMqConfirmTracker> trackers = new ConcurrentHashMap<>();
+
+    RabbitMqChannelPool(RabbitMqConnectionManager manager, boolean confirms, int maxChannels, long borrowTimeout) {
+        this.manager = manager;
+        this.confirms = confirms;
+        this.borrowTimeout = borrowTimeout;
+        this.permits = new Semaphore(maxChannels);
+    }
+
+    /**
+     * Borrows a channel, opening a new one if no idle channel is available.
+     * The channel must be given back through {@link #release(Channel)}.
+     *
+     * @return the borrowed channel
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws TimeoutException if no channel became available in time
+     */
+    public Channel borrow() throws IOException, InterruptedException, TimeoutException {
+        if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("Timed out waiting for a RabbitMQ channel");
+        }
+        try {
+            Channel channel;
+            while ((channel = idleChannels.pollFirst()) != null) {
+                if (channel.isOpen()) return channel;
+            }
+            channel = manager.newChannel();
+            if (confirms) {
+                channel.confirmSelect();
+                RabbitMqConfirmTracker tracker = new RabbitMqConfirmTracker();
+                channel.addConfirmListener(tracker);
+                channel.addShutdownListener(tracker);
+                trackers.put(channel, tracker);
+            }
+            return channel;
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed channel back to the pool. Closed channels are discarded.
+     *
+     * @param channel the borrowed channel
+     */
+    public void release(Channel channel) {
+        if (channel.isOpen()) {
+            // the most recently used channel is lent first, so the idle ones can be left unused
+            idleChannels.offerFirst(channel);
+        } else {
+            trackers.remove(channel);
+        }
+        permits.release();
+    }
+
+    /**
+     * Performs the given action with a borrowed channel, giving it back afterwards.
+     *
+     * @param action the action to be performed
+     * @param <R> the type of the action result
+     * @return the result of the action
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws TimeoutException
+     */
+    public <R> R withChannel(ChannelFunction<R> action) throws IOException, InterruptedException, TimeoutException {
+        Channel channel = borrow();
+        try {
+            return action.apply(channel);
+        } finally {
+            release(channel);
+        }
+    }
+
+    /**
+     * Returns the tracker of the outstanding confirmations of a channel borrowed from a confirming pool.
+     *
+     * @param channel the borrowed channel
+     * @return the confirm tracker of the channel, or null if the pool is not a confirming one
+     */
+    public RabbitMqConfirmTracker tracker(Channel channel) {
+        return trackers.get(channel);
+    }
+
+    /**
+     * Returns whether the channels of this pool are in publisher confirm mode.
+     *
+     * @return true if the channels are in confirm mode
+     */
+    public boolean isConfirming() {
+        return confirms;
+    }
+
+    void close() {
+        Channel channel;
+        while ((channel = idleChannels.pollFirst()) != null) {
+            try {
+                channel.close();
+            } catch (IOException | TimeoutException e) {
+                e.printStackTrace();
+            }
+        }
+        trackers.clear();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * RabbitMqConfirmTracker keeps track of the messages published on a channel in confirm mode
+ * which are still waiting for the broker confirmation.
+ * Each message is registered with its publish sequence number before being published: its future is completed
+ * when the broker acks it, or completed exceptionally, reporting the sequence number, when the broker nacks it
+ * or the channel is closed before the confirmation arrives.
+ */
+public class RabbitMqConfirmTracker implements ConfirmListener, ShutdownListener {
+
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Long>> outstanding = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers the message about to be published with the given sequence number.
+     *
+     * @param sequenceNumber the publish sequence number, as returned by {@link com.rabbitmq.client.Channel#getNextPublishSeqNo()}
+     * @return the future completed with the sequence number once the broker confirmed the message
+     */
+    public CompletableFuture<Long> register(long sequenceNumber) {
+        CompletableFuture<Long> confirmation = new CompletableFuture<>();
+        outstanding.put(sequenceNumber, confirmation);
+        return confirmation;
+    }
+
+    /**
+     * Fails the message registered with the given sequence number, if the publish itself failed.
+     *
+     * @param sequenceNumber the publish sequence number
+     * @param cause the reason of the failure
+     */
+    public void fail(long sequenceNumber, Throwable cause) {
+        CompletableFuture<Long> confirmation = outstanding.remove(sequenceNumber);
+        if (confirmation != null) {
+            confirmation.completeExceptionally(new NotificationException(
+                    String.format("RabbitMQ message with sequence number %d was not published: %s", sequenceNumber, cause.getMessage())));
+        }
+    }
+
+    /**
+     * Returns the number of messages still waiting for the broker confirmation.
+     *
+     * @return the outstanding confirmations
+     */
+    public int getOutstanding() {
+        return outstanding.size();
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        for (Map.Entry<Long, CompletableFuture<Long>> entry : confirmed(deliveryTag, multiple).entrySet()) {
+            entry.getValue().complete(entry.getKey());
+        }
+        confirmed(deliveryTag, multiple).clear();
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        for (Map.Entry<Long, CompletableFuture<Long>> entry : confirmed(deliveryTag, multiple).entrySet()) {
+            entry.getValue().completeExceptionally(new NotificationException(
+                    String.format("RabbitMQ broker nacked the message with sequence number %d", entry.getKey())));
+        }
+        confirmed(deliveryTag, multiple).clear();
+    }
+
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        for (Map.Entry<Long, CompletableFuture<Long>> entry : outstanding.entrySet()) {
+            entry.getValue().completeExceptionally(new NotificationException(
+                    String.format("RabbitMQ channel closed before confirming the message with sequence number %d: %s", entry.getKey(), cause.getMessage())));
+        }
+        outstanding.clear();
+    }
+
+    private ConcurrentNavigableMap<Long, CompletableFuture<Long>> confirmed(long deliveryTag, boolean multiple) {
+        // with the multiple flag the broker confirms all the messages up to the given tag included
+        return multiple
+                ? outstanding.headMap(deliveryTag, true)
+                : outstanding.subMap(deliveryTag, true, deliveryTag, true);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.notificationdemo.notifications.connections;
+
+import com.example.notificationdemo.utils.JobRuntime;
+import com.example.notificationdemo.utils.Properties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RabbitMqConnectionManager is the process-wide owner of the AMQP connections.
+ * It multiplexes all the producers and consumers on a small, fixed number of connections
+ * and hands out channels from two pools: one for fire-and-forget publishing and
+ * one whose channels are in publisher confirm mode.
+ * The shared instance is registered to the {@link JobRuntime}, which closes it once producers and consumers are closed.
+ */
+public final class RabbitMqConnectionManager implements AutoCloseable {
+
+    private static volatile RabbitMqConnectionManager instance;
+
+    private final ConnectionFactory factory;
+    // the slots are read without the lock, so a connection is published to the other threads once fully opened
+    private final AtomicReferenceArray<Connection> connections;
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final RabbitMqChannelPool publishingPool;
+    private final RabbitMqChannelPool confirmingPool;
+
+    /**
+     * Returns the shared {@link RabbitMqConnectionManager}, configured through the 'rabbitmq.*' properties.
+     *
+     * @return the shared RabbitMqConnectionManager
+     */
+    public static RabbitMqConnectionManager getInstance() {
+        if (instance == null) {
+            synchronized (RabbitMqConnectionManager.class) {
+                if (instance == null) {
+                    ConnectionFactory factory = new ConnectionFactory();
+                    factory.setHost(Properties.get("rabbitmq.host"));
+                    factory.setPort(Integer.parseInt(Properties.get("rabbitmq.port")));
+                    factory.setUsername(Properties.get("rabbitmq.username"));
+                    factory.setPassword(Properties.get("rabbitmq.password"));
+                    instance = new RabbitMqConnectionManager(factory,
+                            Integer.parseInt(Properties.get("rabbitmq.pool.connections")),
+                            Integer.parseInt(Properties.get("rabbitmq.pool.max_channels")),
+                            Long.parseLong(Properties.get("rabbitmq.pool.borrow_timeout")));
+                    JobRuntime.getInstance().registerResource(instance);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Basic constructor for {@link RabbitMqConnectionManager}.
+     * The connections are opened lazily, at the first channel request.
+     *
+     * @param factory the factory of the AMQP connections
+     * @param connections the number of connections to be multiplexed
+     * @param maxChannels the maximum number of channels of each pool
+     * @param borrowTimeout the maximum time in milliseconds to wait for a pooled channel
+     */
+    public RabbitMqConnectionManager(ConnectionFactory factory, int connections, int maxChannels, long borrowTimeout) {
+        this.factory = factory;
+        this.connections = new AtomicReferenceArray<>(connections);
+        this.publishingPool = new RabbitMqChannelPool(this, false, maxChannels, borrowTimeout);
+        this.confirmingPool = new RabbitMqChannelPool(this, true, maxChannels, borrowTimeout);
+    }
+
+    /**
+     * Opens a new channel, owned by the caller, on one of the shared connections.
+     * Consumers need a dedicated channel since their deliveries and QoS settings are bound to it.
+     *
+     * @return the new channel
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public Channel newChannel() throws IOException, TimeoutException {
+        return connection().createChannel();
+    }
+
+    /**
+     * Returns the pool of the channels used to publish fire-and-forget.
+     *
+     * @return the publishing channel pool
+     */
+    public RabbitMqChannelPool getPublishingPool() {
+        return publishingPool;
+    }
+
+    /**
+     * Returns the pool of the channels in publisher confirm mode.
+     *
+     * @return the confirming channel pool
+     */
+    public RabbitMqChannelPool getConfirmingPool() {
+        return confirmingPool;
+    }
+
+    /**
+     * Closes all the pooled channels and the shared connections.
+     */
+    @Override
+    public synchronized void close() {
+        publishingPool.close();
+        confirmingPool.close();
+        for (int i = 0; i < connections.length(); i++) {
+            Connection connection = connections.getAndSet(i, null);
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private Connection connection() throws IOException, TimeoutException {
+        int index = Math.floorMod(nextConnection.getAndIncrement(), connections.length());
+        Connection connection = connections.get(index);
+        if (connection == null || !connection.isOpen()) {
+            synchronized (this) {
+                connection = connections.get(index);
+                if (connection == null || !connection.isOpen()) {
+                    connection = factory.newConnection("notifications-" + index);
+                    connections.set(index, connection);
+                }
+            }
+        }
+        return connection;
+    }
+}
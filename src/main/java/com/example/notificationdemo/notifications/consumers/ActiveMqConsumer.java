@@ -1,88 +1,257 @@
 package com.example.notificationdemo.notifications.consumers;
 
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.ActiveMqDestinations;
+import com.example.notificationdemo.notifications.metrics.ConsumerMetrics;
 import com.example.notificationdemo.notifications.producers.ActiveMqEventProducer;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressors;
 import com.example.notificationdemo.utils.ContinuousJob;
 import com.example.notificationdemo.utils.Properties;
 import org.apache.activemq.ActiveMQConnectionFactory;
 
 import javax.jms.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
  * This class acts as a consumer for the {@link ActiveMqEventProducer}.
  * It creates a subscriber for the producer's topic by specifying the notification id and the topic name.
- * Every ActiveMqConsumer instance for a specific notification id has its own copy of the messages.
- * It can be started as a {@link ContinuousJob}
+ * Every ActiveMqConsumer instance for a specific notification id has its own copy of the messages,
+ * unless it joins a consumer group: the members of a group, in this or other instances of the application,
+ * compete for the messages of the group queue of a virtual topic (see {@link ActiveMqDestinations}), so each message is consumed once per group.
+ * It can be started as a {@link ContinuousJob}, draining all the messages available at each execution,
+ * or as a JMS {@link MessageListener} to which the broker pushes the messages:
+ * a group member listens on 'activemq.consumer.concurrency' sessions, each delivering its messages on its own thread.
+ * The broker pushes up to 'activemq.consumer.prefetch' messages to each session ahead of their acknowledgement,
+ * which is sent according to 'activemq.consumer.ack_mode'.
+ * Once stopped and closed, it releases its JMS consumers, its sessions and its own connection.
  */
 public class ActiveMqConsumer extends ContinuousJob {
 
     private String eventName;
     private Connection connection;
     private Session session;
-    private Topic topic;
+    private Destination destination;
     private MessageConsumer consumer;
+    // the additional sessions listening on the group queue
+    private final List<Session> listenerSessions = new ArrayList<>();
+    private final List<MessageConsumer> listenerConsumers = new ArrayList<>();
+    private final String ackMode = ackMode();
+    private final int prefetch = Integer.parseInt(Properties.get("activemq.consumer.prefetch"));
+    private final int concurrency = Integer.parseInt(Properties.get("activemq.consumer.concurrency"));
     private String clientId;
     private Consumer<String> onReadConsumer;
+    // the connection of a consumer created from a producer belongs to the connection manager of the producer
+    private boolean ownsConnection;
+    private ConsumerMetrics metrics;
 
     private static int clientIdIndex = -1;
+    // the maximum number of messages read in a single drain execution, so a busy topic doesn't starve the scheduler
+    private static final int MAX_DRAIN_BATCH = 500;
 
     /**
      * Basic constructor for {@link ActiveMqConsumer}.
+     * The consumer joins the group set by the 'activemq.consumer.group' property,
+     * or subscribes to the topic on its own if the property is not set.
      *
      * @param eventName the event name
      * @param topicName the ActiveMQ topic name
      * @throws JMSException
      */
     public ActiveMqConsumer(String eventName, String topicName) throws JMSException {
+        this(eventName, topicName, Properties.get("activemq.consumer.group"));
+    }
+
+    /**
+     * Constructor for {@link ActiveMqConsumer} joining the given consumer group.
+     * All the consumers of the same group share the messages of the topic, each message being consumed by only one of them.
+     *
+     * @param eventName the event name
+     * @param topicName the ActiveMQ topic name
+     * @param group the consumer group, if null the consumer subscribes to the topic on its own and reads all the messages
+     * @throws JMSException
+     */
+    public ActiveMqConsumer(String eventName, String topicName, String group) throws JMSException {
         this.eventName = eventName;
         this.connection = connection(eventName);
+        this.ownsConnection = true;
         this.session = session(this.connection);
-        this.topic = this.session.createTopic(topicName);
-        this.consumer = this.session.createConsumer(topic);
+        this.subscribe(topicName, group);
     }
 
     /**
      * Constructor for {@link ActiveMqConsumer}.
-     * It take advantage of an existing {@link ActiveMqEventProducer} to reuse connection, session and topic.
+     * It take advantage of an existing {@link ActiveMqEventProducer} to reuse its shared connections and topic,
+     * opening a session of its own since JMS sessions are single threaded.
+     * The consumer joins the group set by the 'activemq.consumer.group' property, if any.
      *
      * @param producer the ActiveMqChannel
      * @throws JMSException
      */
     public ActiveMqConsumer(final ActiveMqEventProducer producer) throws JMSException {
         this.eventName = producer.getEventName();
-        this.connection = producer.getConnection();
-        this.session = producer.getSession();
-        this.topic = producer.getTopic();
-        this.consumer = this.session.createConsumer(topic);
+        this.connection = producer.getConnectionManager().getConnection();
+        this.session = session(this.connection);
+        this.subscribe(producer.getTopicName(), Properties.get("activemq.consumer.group"));
+    }
+
+    private void subscribe(String topicName, String group) throws JMSException {
+        if (group != null) {
+            this.destination = this.session.createQueue(
+                    ActiveMqDestinations.withPrefetch(ActiveMqDestinations.groupQueueName(group, topicName), this.prefetch));
+        } else {
+            this.destination = this.session.createTopic(
+                    ActiveMqDestinations.withPrefetch(ActiveMqDestinations.topicName(topicName), this.prefetch));
+        }
+        this.consumer = this.session.createConsumer(this.destination);
+        this.metrics = ConsumerMetrics.of("activemq", this.eventName);
     }
 
     /**
      * Returns a text message (a JSON string if the message was a DTO) read from the topic.
+     * The message is acknowledged as soon as it is read.
      *
      * @return received text message
      * @throws JMSException
      */
     public String readMessage() throws JMSException {
-        Message message = this.consumer.receive(5L);
-        if (message != null) {
-            return ((TextMessage) message).getText();
+        return textAcknowledged(this.consumer.receive(5L));
+    }
+
+    /**
+     * Returns a text message already delivered to the consumer, without waiting for the broker.
+     * The message is acknowledged as soon as it is read.
+     *
+     * @return received text message, or null if none is available
+     * @throws JMSException
+     */
+    public String readMessageNoWait() throws JMSException {
+        return textAcknowledged(this.consumer.receiveNoWait());
+    }
+
+    private String textAcknowledged(Message message) throws JMSException {
+        String text;
+        try {
+            text = text(message);
+        } catch (JMSException | RuntimeException e) {
+            // not acknowledged, the message would be by the next acknowledgement of the session
+            this.recover(this.session);
+            throw e;
+        }
+        this.acknowledge(message);
+        return text;
+    }
+
+    /**
+     * Consumes the message and, in 'client' acknowledgement mode, acknowledges it once consumed.
+     *
+     * @param message the received message
+     * @throws JMSException
+     */
+    private void consume(Message message) throws JMSException {
+        long start = System.nanoTime();
+        try {
+            this.onReadConsumer.accept(text(message));
+        } catch (JMSException | RuntimeException e) {
+            this.metrics.failed(start);
+            throw e;
+        }
+        this.metrics.handled(start);
+        this.acknowledge(message);
+    }
+
+    private void acknowledge(Message message) throws JMSException {
+        if (message != null && "client".equals(this.ackMode)) {
+            message.acknowledge();
+        }
+    }
+
+    /**
+     * In 'client' acknowledgement mode, redelivers the messages of the session not yet acknowledged after a failed consumption:
+     * as an acknowledgement covers all the messages received before by the session,
+     * the next one would otherwise acknowledge the failed message too.
+     *
+     * @param session the session the message has been received by
+     */
+    private void recover(Session session) {
+        if (!"client".equals(this.ackMode)) {
+            return;
+        }
+        try {
+            session.recover();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the payload of the message as JSON text: the producers send {@link BytesMessage}s
+     * decompressed according to their 'contentEncoding' property and decoded by the codec matching their 'contentType' property, while {@link TextMessage}s are still accepted.
+     *
+     * @param message the received message
+     * @return the message payload, or null if no message was received
+     * @throws JMSException
+     */
+    private static String text(Message message) throws JMSException {
+        if (message == null) {
+            return null;
+        }
+        if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] payload = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(payload);
+            try {
+                return PayloadCodecs.toText(bytesMessage.getStringProperty(PayloadCodecs.CONTENT_TYPE_PROPERTY),
+                        bytesMessage.getStringProperty(PayloadCompressors.CONTENT_ENCODING_PROPERTY), payload);
+            } catch (NotificationException e) {
+                throw new JMSException(e.getMessage());
+            }
         }
-        return null;
+        return ((TextMessage) message).getText();
     }
 
     private Connection connection(String id) throws JMSException {
         clientIdIndex++;
         this.clientId = id+"-consumer"+clientIdIndex+"";
 
-        Connection connection = new ActiveMQConnectionFactory(Properties.get("activemq.host"))
-                .createConnection(Properties.get("activemq.username"), Properties.get("activemq.password"));
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(Properties.get("activemq.host"));
+        // the acknowledgements are sent in batches once most of the prefetched messages are consumed, or after a short timeout
+        factory.setOptimizeAcknowledge("optimized".equals(this.ackMode));
+        Connection connection = factory.createConnection(Properties.get("activemq.username"), Properties.get("activemq.password"));
         connection.setClientID(clientId);
         connection.start();
         return connection;
     }
 
     private Session session(final Connection connection) throws JMSException {
-        return connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        return connection.createSession(false, acknowledgeMode(this.ackMode));
+    }
+
+    private static String ackMode() {
+        String ackMode = Properties.get("activemq.consumer.ack_mode");
+        return ackMode == null ? "auto" : ackMode.toLowerCase();
+    }
+
+    /**
+     * Returns the JMS acknowledgement mode of the sessions:
+     * 'batch' lets the session acknowledge the messages lazily in batches, possibly redelivering some of them after a failure,
+     * 'client' acknowledges each message only once consumed, so a message whose consumption fails is redelivered,
+     * while 'auto' and 'optimized' acknowledge each message as soon as it is delivered, the latter sending the acknowledgements in batches.
+     *
+     * @param ackMode the 'activemq.consumer.ack_mode' property value
+     * @return the JMS acknowledgement mode
+     */
+    private static int acknowledgeMode(String ackMode) {
+        switch (ackMode) {
+            case "batch":
+                return Session.DUPS_OK_ACKNOWLEDGE;
+            case "client":
+                return Session.CLIENT_ACKNOWLEDGE;
+            default:
+                return Session.AUTO_ACKNOWLEDGE;
+        }
     }
 
     /**
@@ -94,30 +263,142 @@ public class ActiveMqConsumer extends ContinuousJob {
         return this.clientId;
     }
 
+    /**
+     * Closes the JMS consumers, waiting for the messages being delivered to the listeners, if any, to be consumed,
+     * and their sessions and connection, unless the connection is shared with the producer the consumer has been created from.
+     * The messages not yet acknowledged are redelivered, to the other members of the group if any.
+     */
+    @Override
+    public void close() {
+        super.close();
+        try {
+            for (MessageConsumer listenerConsumer : this.listenerConsumers) {
+                listenerConsumer.close();
+            }
+            this.consumer.close();
+            if (this.ownsConnection) {
+                this.connection.close();
+            } else {
+                for (Session listenerSession : this.listenerSessions) {
+                    listenerSession.close();
+                }
+                this.session.close();
+            }
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * The job to be repeated at the various intervals.
      */
     @Override
     public void doWork() {
         try {
-            String message = this.readMessage();
+            Message message = this.consumer.receive(5L);
             if (message != null) {
-                this.onReadConsumer.accept(message);
+                this.consume(message);
+            }
+        } catch (JMSException e) {
+            this.recover(this.session);
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            // not rethrown: a periodic execution which throws is never run again
+            this.recover(this.session);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads all the messages available, up to a maximum batch, and consumes them.
+     *
+     * @return the number of messages consumed
+     */
+    @Override
+    public int drain() {
+        int consumed = 0;
+        try {
+            Message message;
+            while (consumed < MAX_DRAIN_BATCH && (message = this.consumer.receiveNoWait()) != null) {
+                this.consume(message);
+                consumed++;
             }
         } catch (JMSException e) {
+            this.recover(this.session);
             e.printStackTrace();
+        } catch (RuntimeException e) {
+            this.recover(this.session);
+            throw e;
+        } finally {
+            this.metrics.batch(consumed);
         }
+        return consumed;
     }
 
     /**
      * Starts listening and reacting to the messages.
      * Gets a {@link Consumer} to consume the read messages.
+     * If the 'activemq.consumer.listener' property is set to 'true' the messages are pushed by the broker
+     * to a {@link MessageListener}, otherwise they are read by the cyclic job.
      *
      * @param consumer the action to be performed on the read message
      */
     public void onReadStart(Consumer<String> consumer) {
         this.onReadConsumer = consumer;
-        this.start();
+        if (Boolean.parseBoolean(Properties.get("activemq.consumer.listener"))) {
+            try {
+                this.onReadListen(consumer);
+                return;
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+        if (isDrainEnabled()) {
+            this.startDraining();
+        } else {
+            this.start();
+        }
+    }
+
+    /**
+     * Starts reacting to the messages pushed by the broker, with no polling involved.
+     * The given {@link Consumer} is invoked on the session delivery thread:
+     * a group member listens on 'activemq.consumer.concurrency' sessions, so it must be thread safe,
+     * while a topic subscriber listens on a single session, since each session would receive its own copy of the messages.
+     *
+     * @param consumer the action to be performed on the received message
+     * @throws JMSException
+     */
+    public void onReadListen(Consumer<String> consumer) throws JMSException {
+        this.register();
+        this.onReadConsumer = consumer;
+        this.consumer.setMessageListener(listener(this.session));
+        int sessions = this.destination instanceof Queue ? this.concurrency : 1;
+        for (int i = 1; i < sessions; i++) {
+            Session listenerSession = session(this.connection);
+            MessageConsumer listenerConsumer = listenerSession.createConsumer(this.destination);
+            listenerConsumer.setMessageListener(listener(listenerSession));
+            this.listenerSessions.add(listenerSession);
+            this.listenerConsumers.add(listenerConsumer);
+        }
+    }
+
+    private MessageListener listener(final Session session) {
+        return message -> {
+            try {
+                this.consume(message);
+            } catch (JMSException e) {
+                this.recover(session);
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                if (!"client".equals(this.ackMode)) {
+                    // the session redelivers the message itself
+                    throw e;
+                }
+                e.printStackTrace();
+                this.recover(session);
+            }
+        };
     }
 }
 
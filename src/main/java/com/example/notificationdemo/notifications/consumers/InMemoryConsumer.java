@@ -0,0 +1,139 @@
+package com.example.notificationdemo.notifications.consumers;
+
+import com.example.notificationdemo.notifications.inmemory.RingBuffer;
+import com.example.notificationdemo.notifications.inmemory.Sequence;
+import com.example.notificationdemo.notifications.metrics.ConsumerMetrics;
+import com.example.notificationdemo.notifications.producers.InMemoryEventProducer;
+import com.example.notificationdemo.utils.Drainable;
+import com.example.notificationdemo.utils.JobRuntime;
+import com.example.notificationdemo.utils.SharedExecutors;
+
+import java.util.function.Consumer;
+
+/**
+ * This class acts as a consumer for the {@link InMemoryEventProducer}.
+ * Every InMemoryConsumer has its own copy of the notifications issued after it has been created,
+ * and it consumes them in order on its own thread, in batches of all the notifications available.
+ * Until it is stopped the consumer holds the producer back when it lags a whole buffer behind.
+ *
+ * @param <T> the type of the object notified as body of the message.
+ */
+public class InMemoryConsumer<T> implements Drainable {
+
+    private final String eventName;
+    private final RingBuffer<T> ringBuffer;
+    private final Sequence sequence;
+    private Thread thread;
+    private volatile boolean stopped;
+    private final ConsumerMetrics metrics;
+
+    /**
+     * Returns an instance of {@link InMemoryConsumer} subscribed to the given {@link InMemoryEventProducer}.
+     *
+     * @param producer the instance of {@link InMemoryEventProducer}
+     * @param <T> the type of the object notified as body of the message
+     * @return the InMemoryConsumer
+     */
+    public static <T> InMemoryConsumer<T> createConsumerFromProducer(final InMemoryEventProducer<T> producer) {
+        return new InMemoryConsumer<>(producer.getEventName(), producer.getRingBuffer());
+    }
+
+    private InMemoryConsumer(String eventName, RingBuffer<T> ringBuffer) {
+        this.eventName = eventName;
+        this.ringBuffer = ringBuffer;
+        this.sequence = ringBuffer.subscribe();
+        this.metrics = ConsumerMetrics.of("inmemory", eventName);
+    }
+
+    /**
+     * Returns the event name.
+     *
+     * @return the event name
+     */
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Returns the number of notifications received and not yet consumed.
+     *
+     * @return the number of pending notifications
+     */
+    public long getBacklog() {
+        return Math.max(0, ringBuffer.getCursor() - sequence.get());
+    }
+
+    /**
+     * Starts consuming the notifications on a dedicated thread.
+     *
+     * @param consumer the action to be performed on each notification
+     */
+    public synchronized void onReadStart(Consumer<T> consumer) {
+        if (thread != null) throw new IllegalStateException("Consumer already started");
+        thread = SharedExecutors.daemonThreadFactory("inmemory-" + eventName).newThread(() -> consume(consumer));
+        thread.start();
+        JobRuntime.getInstance().registerConsumer(this);
+    }
+
+    /**
+     * Stops consuming the notifications and unsubscribes from the producer, which stops waiting for this consumer.
+     * The notification being consumed, if any, is completed: the consumer thread is not interrupted, which could
+     * abort the callback, and sees the stop flag within the wait of its strategy, at most a few milliseconds.
+     */
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        ringBuffer.unsubscribe(sequence);
+    }
+
+    /**
+     * Waits for the consumer thread to complete the notification it is consuming, if any, once stopped.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if the consumer thread completed in time
+     * @throws InterruptedException
+     */
+    @Override
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+        }
+        if (thread == null) return true;
+        thread.join(Math.max(1, timeout));
+        return !thread.isAlive();
+    }
+
+    /**
+     * Removes the consumer from the {@link JobRuntime}: it holds no other resource.
+     */
+    @Override
+    public void close() {
+        JobRuntime.getInstance().unregister(this);
+    }
+
+    private void consume(Consumer<T> consumer) {
+        long next = sequence.get() + 1;
+        while (!stopped) {
+            long available;
+            try {
+                available = ringBuffer.waitFor(next, () -> stopped);
+            } catch (InterruptedException e) {
+                return;
+            }
+            metrics.batch((int) (available - next + 1));
+            for (; next <= available && !stopped; next++) {
+                long start = System.nanoTime();
+                try {
+                    consumer.accept(ringBuffer.get(next));
+                    metrics.handled(start);
+                } catch (RuntimeException e) {
+                    metrics.failed(start);
+                    e.printStackTrace();
+                }
+            }
+            // the slots are released once the whole batch has been consumed
+            sequence.set(next - 1);
+        }
+    }
+}
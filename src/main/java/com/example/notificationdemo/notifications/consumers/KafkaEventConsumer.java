@@ -1,18 +1,43 @@
 package com.example.notificationdemo.notifications.consumers;
 
+import com.example.notificationdemo.notifications.metrics.ConsumerMetrics;
+import com.example.notificationdemo.notifications.serialization.PayloadTextDeserializer;
 import com.example.notificationdemo.utils.ContinuousJob;
+import com.example.notificationdemo.utils.OffsetTracker;
+import com.example.notificationdemo.utils.OrderedWorkerPool;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
 import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 
 /**
  * KafkaEventConsumer is a consumer for the incoming Kafka messages. It can be started as a {@link ContinuousJob}.
+ * In drain mode it runs a long-poll loop: the poll itself waits for the records, so no further backoff is needed.
+ * When 'kafka.consumer.workers' is greater than zero the records are processed in parallel by a pool of workers,
+ * keeping the order of the records of the same partition (or of the same key, with 'kafka.consumer.ordering=key').
+ * With parallel processing, or with 'kafka.consumer.commit.mode=managed', the offsets are committed by the consumer
+ * itself (at-least-once): asynchronously and in batches, only up to the records whose processing, and the processing
+ * of all the records before them, completed; synchronously when partitions are revoked and when the consumer stops.
+ * A failing record is not committed: the serial mode seeks back to it and polls it again 'consumers.error_backoff'
+ * milliseconds later, while a worker retries it on its lane every 'consumers.error_backoff' milliseconds,
+ * holding back the records queued behind it. After 'kafka.consumer.max_attempts' failures the record is reported and skipped,
+ * so that a record which can't be handled doesn't stall its partition for good.
+ * The lag of the consumer, the records of its partitions still to be read, is refreshed every 'metrics.lag.interval'
+ * milliseconds from the positions the consumer already knows, with no further request to the brokers.
  */
 public class KafkaEventConsumer extends ContinuousJob {
 
@@ -20,20 +45,76 @@ public class KafkaEventConsumer extends ContinuousJob {
     private String topic;
     private KafkaConsumer<String, String> consumer;
     private String consumerName;
+    private String groupId;
     private Consumer<ConsumerRecord<String, String>> onReadConsumer;
+    private final Duration pollTimeout = Duration.ofMillis(Long.parseLong(com.example.notificationdemo.utils.Properties.get("kafka.consumer.poll_timeout")));
+    private final int workers = Integer.parseInt(com.example.notificationdemo.utils.Properties.get("kafka.consumer.workers"));
+    private final boolean keyOrdering = "key".equals(com.example.notificationdemo.utils.Properties.get("kafka.consumer.ordering"));
+    private final int maxPending = Integer.parseInt(com.example.notificationdemo.utils.Properties.get("kafka.consumer.max_pending"));
+    private final boolean managedCommit = this.workers > 0 || "managed".equals(com.example.notificationdemo.utils.Properties.get("kafka.consumer.commit.mode"));
+    private final int commitBatchSize = Integer.parseInt(com.example.notificationdemo.utils.Properties.get("kafka.consumer.commit.batch_size"));
+    private final long commitInterval = Long.parseLong(com.example.notificationdemo.utils.Properties.get("kafka.consumer.commit.interval"));
+    private final long shutdownTimeout = Long.parseLong(com.example.notificationdemo.utils.Properties.get("kafka.consumer.shutdown_timeout"));
+    private final int maxAttempts = Integer.parseInt(com.example.notificationdemo.utils.Properties.get("kafka.consumer.max_attempts"));
+    private OrderedWorkerPool workerPool;
+    private final Map<TopicPartition, OffsetTracker> offsetTrackers = new HashMap<>();
+    private int uncommitted = 0;
+    private long lastCommit = System.currentTimeMillis();
+    // the record the serial mode keeps failing on, polled again after each failure, and its failed attempts
+    private TopicPartition failedPartition;
+    private long failedOffset;
+    private int failedAttempts;
+    private volatile boolean closed = false;
+    private final ConsumerMetrics metrics;
+    private final long lagInterval = Long.parseLong(com.example.notificationdemo.utils.Properties.get("metrics.lag.interval"));
+    private long lastLagRefresh = 0;
 
     private static int consumerNumber = -1;
+    // while the partitions are paused the poll must return quickly, so they can be resumed as soon as the workers catch up
+    private static final Duration PAUSED_POLL_TIMEOUT = Duration.ofMillis(50);
 
+    /**
+     * Returns a new {@link KafkaEventConsumer}.
+     * The consumer joins the group set by the 'kafka.consumer.group' property, so that the partitions of the topic
+     * are shared among all its members, or its own group if the property is not set, so that it reads all the records.
+     *
+     * @param eventName the event name
+     * @param topic the Kafka topic name
+     * @return the KafkaEventConsumer
+     */
     public static KafkaEventConsumer create(String eventName, String topic) {
+        return createInGroup(eventName, topic, com.example.notificationdemo.utils.Properties.get("kafka.consumer.group"));
+    }
+
+    /**
+     * Returns a new {@link KafkaEventConsumer} joining the given consumer group.
+     * All the consumers of the same group, in this or other instances of the application,
+     * share the partitions of the topic: each record is read by one of them only.
+     *
+     * @param eventName the event name
+     * @param topic the Kafka topic name
+     * @param groupId the consumer group, if null the consumer joins a group of its own
+     * @return the KafkaEventConsumer
+     */
+    public static synchronized KafkaEventConsumer createInGroup(String eventName, String topic, String groupId) {
         consumerNumber++;
-        return new KafkaEventConsumer(eventName, eventName+"-consumer"+consumerNumber+"", topic);
+        String consumerName = eventName+"-consumer"+consumerNumber+"";
+        return new KafkaEventConsumer(eventName, consumerName, groupId != null ? groupId : consumerName, topic);
     }
 
-    private KafkaEventConsumer(String eventName, String consumerName, String topic) {
+    private KafkaEventConsumer(String eventName, String consumerName, String groupId, String topic) {
         this.eventName = eventName;
         this.consumerName = consumerName;
+        this.groupId = groupId;
         this.topic = topic;
         this.consumer = kafkaConsumer(topic);
+        this.metrics = ConsumerMetrics.of("kafka", eventName).trackLag(consumerName);
+        if (this.workers > 0) {
+            this.workerPool = new OrderedWorkerPool(consumerName + "-worker", this.workers);
+        }
+        // the long poll already waits for the records to come
+        this.idleBackoff = 0;
+        this.maxIdleBackoff = 0;
     }
 
     private KafkaConsumer<String, String> kafkaConsumer(String topic) {
@@ -48,15 +129,22 @@ public class KafkaEventConsumer extends ContinuousJob {
 
         Properties props = new Properties();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaUrl);
-        props.put(ConsumerConfig.GROUP_ID_CONFIG, this.consumerName);
-        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, enableAutoCommit);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, this.groupId);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, this.consumerName);
+        // with managed commits the offsets can't be auto committed, since records may not be processed yet
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, this.managedCommit ? "false" : enableAutoCommit);
         props.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, autocommitInterval);
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, sessionTimeoutMs);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
+        // the values are decoded by the codec named in the record content type header
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, PayloadTextDeserializer.class.getName());
 
         KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props);
-        consumer.subscribe(Collections.singletonList(topic));
+        if (this.managedCommit) {
+            consumer.subscribe(Collections.singletonList(topic), new CommitOnRevokeListener());
+        } else {
+            consumer.subscribe(Collections.singletonList(topic));
+        }
         return consumer;
     }
 
@@ -68,17 +156,257 @@ public class KafkaEventConsumer extends ContinuousJob {
         return consumerName;
     }
 
+    /**
+     * Returns the Kafka consumer group the consumer belongs to.
+     * @return the kafka consumer group id
+     */
+    public String getGroupId() {
+        return groupId;
+    }
+
     /**
      * Contains the logic to be performed in a cyclic way any established interval of time
      */
     @Override
     public void doWork() {
-        ConsumerRecords<String, String> records = this.consumer.poll(Duration.ofMillis(5000));
+        this.drain();
+    }
+
+    /**
+     * Polls the records, waiting for them up to the 'kafka.consumer.poll_timeout', and consumes them.
+     *
+     * @return the number of records consumed
+     */
+    @Override
+    public int drain() {
+        if (this.closed) {
+            return 0;
+        }
+        if (this.workerPool != null) {
+            return this.dispatch();
+        }
+        ConsumerRecords<String, String> records = this.consumer.poll(this.pollTimeout);
+        this.metrics.batch(records.count());
+        this.refreshLag();
+        if (!this.managedCommit) {
+            for (ConsumerRecord<String, String> record : records) {
+                this.handle(record);
+            }
+            return records.count();
+        }
+
+        Map<TopicPartition, Long> processed = new HashMap<>();
+        boolean failed = false;
+        try {
+            for (ConsumerRecord<String, String> record : records) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                try {
+                    this.handle(record);
+                } catch (RuntimeException e) {
+                    if (!this.isLastAttempt(partition, record.offset())) {
+                        throw e;
+                    }
+                    this.skip(record, e);
+                }
+                processed.put(partition, record.offset());
+            }
+        } catch (RuntimeException e) {
+            // the failed record and the following ones are read again at the next poll
+            for (TopicPartition partition : records.partitions()) {
+                Long last = processed.get(partition);
+                long firstUnprocessed = last != null ? last + 1 : records.records(partition).get(0).offset();
+                this.consumer.seek(partition, firstUnprocessed);
+            }
+            // not rethrown: a periodic execution which throws is never run again, so the seek would never be retried
+            e.printStackTrace();
+            failed = true;
+        } finally {
+            for (Map.Entry<TopicPartition, Long> entry : processed.entrySet()) {
+                OffsetTracker tracker = this.offsetTrackers.computeIfAbsent(entry.getKey(), p -> new OffsetTracker());
+                tracker.track(entry.getValue());
+                tracker.complete(entry.getValue());
+            }
+            this.uncommitted += processed.size();
+            this.commitCompleted(false);
+        }
+        if (failed) {
+            try {
+                Thread.sleep(this.errorBackoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+        return records.count();
+    }
+
+    private int dispatch() {
+        ConsumerRecords<String, String> records = this.consumer.poll(this.consumer.paused().isEmpty() ? this.pollTimeout : PAUSED_POLL_TIMEOUT);
+        this.metrics.batch(records.count());
+        this.refreshLag();
         for (ConsumerRecord<String, String> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            OffsetTracker tracker = this.offsetTrackers.computeIfAbsent(partition, p -> new OffsetTracker());
+            tracker.track(record.offset());
+            Object orderingKey = this.keyOrdering && record.key() != null ? record.key() : partition;
+            this.workerPool.submit(orderingKey, () -> this.process(record, tracker));
+        }
+        this.uncommitted += records.count();
+        this.commitCompleted(false);
+
+        // backpressure: the partitions are paused while the workers are behind, so the records don't pile up in memory
+        int pending = this.workerPool.getPending();
+        if (pending >= this.maxPending) {
+            this.consumer.pause(this.consumer.assignment());
+        } else if (pending <= this.maxPending / 2 && !this.consumer.paused().isEmpty()) {
+            this.consumer.resume(this.consumer.paused());
+        }
+        return records.count();
+    }
+
+    private void process(ConsumerRecord<String, String> record, OffsetTracker tracker) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                this.handle(record);
+                tracker.complete(record.offset());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= this.maxAttempts) {
+                    this.skip(record, e);
+                    tracker.complete(record.offset());
+                    return;
+                }
+                e.printStackTrace();
+            }
+            // the record is left uncommitted, so it is read again by whoever owns its partition next
+            if (this.closed || !tracker.isTracked(record.offset())) {
+                return;
+            }
+            try {
+                Thread.sleep(this.errorBackoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts a failed attempt of the serial mode on the given record, which is polled again after each failure.
+     *
+     * @return true if the record has no attempt left
+     */
+    private boolean isLastAttempt(TopicPartition partition, long offset) {
+        if (partition.equals(this.failedPartition) && offset == this.failedOffset) {
+            this.failedAttempts++;
+        } else {
+            this.failedPartition = partition;
+            this.failedOffset = offset;
+            this.failedAttempts = 1;
+        }
+        return this.failedAttempts >= this.maxAttempts;
+    }
+
+    private void skip(ConsumerRecord<String, String> record, RuntimeException e) {
+        System.err.println(String.format("Kafka consumer %s skips the record %s-%d@%d after %d failed attempts: %s",
+                this.consumerName, record.topic(), record.partition(), record.offset(), this.maxAttempts, e));
+    }
+
+    private void handle(ConsumerRecord<String, String> record) {
+        long start = System.nanoTime();
+        try {
             this.onReadConsumer.accept(record);
+        } catch (RuntimeException e) {
+            this.metrics.failed(start);
+            throw e;
+        }
+        this.metrics.handled(start);
+    }
+
+    private void refreshLag() {
+        long now = System.currentTimeMillis();
+        if (now - this.lastLagRefresh < this.lagInterval) {
+            return;
+        }
+        this.lastLagRefresh = now;
+        long lag = 0;
+        for (TopicPartition partition : this.consumer.assignment()) {
+            // the lag of a partition is unknown until its position and end offset have been fetched
+            OptionalLong partitionLag = this.consumer.currentLag(partition);
+            if (partitionLag.isPresent()) {
+                lag += partitionLag.getAsLong();
+            }
+        }
+        this.metrics.lag(lag);
+    }
+
+    private void commitCompleted(boolean sync) {
+        // asynchronous commits are batched: they are sent every 'kafka.consumer.commit.batch_size' records
+        // or every 'kafka.consumer.commit.interval' milliseconds, whichever comes first
+        if (!sync && this.uncommitted < this.commitBatchSize && System.currentTimeMillis() - this.lastCommit < this.commitInterval) {
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, OffsetTracker> entry : this.offsetTrackers.entrySet()) {
+            long contiguous = entry.getValue().pollContiguous();
+            if (contiguous >= 0) {
+                // the committed offset is the one of the next record to be read
+                offsets.put(entry.getKey(), new OffsetAndMetadata(contiguous + 1));
+            }
+        }
+        this.uncommitted = 0;
+        this.lastCommit = System.currentTimeMillis();
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (sync) {
+            try {
+                this.consumer.commitSync(offsets);
+            } catch (KafkaException e) {
+                System.err.println(String.format("Kafka consumer %s failed to commit %s: %s", this.consumerName, offsets, e.getMessage()));
+            }
+        } else {
+            this.consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    System.err.println(String.format("Kafka consumer %s failed to commit %s: %s", this.consumerName, committed, exception.getMessage()));
+                }
+            });
         }
     }
 
+    /**
+     * Stops the consumer: once the records being processed completed (or the 'kafka.consumer.shutdown_timeout' expired)
+     * the processed offsets are committed synchronously and the Kafka consumer is closed.
+     */
+    @Override
+    public void stop() {
+        try {
+            // the Kafka consumer is not thread safe, so it is closed by the job thread, after the last poll
+            this.scheduler.execute(this::closeConsumer);
+        } catch (RejectedExecutionException e) {
+            // the job has already been stopped
+        }
+        super.stop();
+    }
+
+    private void closeConsumer() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.workerPool != null && !this.workerPool.shutdown(this.shutdownTimeout)) {
+                System.err.println(String.format("Kafka consumer %s stopped with records still being processed", this.consumerName));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.managedCommit) {
+            this.commitCompleted(true);
+        }
+        this.consumer.close();
+    }
+
     /**
      * Starts listening and reacting to the messages.
      * Gets a {@link Consumer}, a callback action to consume the read messages.
@@ -86,7 +414,46 @@ public class KafkaEventConsumer extends ContinuousJob {
      */
     public void onReadStart(Consumer<ConsumerRecord<String, String>> consumer) {
         this.onReadConsumer = consumer;
-        // the start() method of the superclass starts the cyclic job
-        this.start();
+        // the start() and startDraining() methods of the superclass start the cyclic job
+        if (isDrainEnabled()) {
+            this.startDraining();
+        } else {
+            this.start();
+        }
+    }
+
+    /**
+     * Commits synchronously the processed offsets of the partitions being revoked, before they are assigned
+     * to another member of the group, so the new owner doesn't process again what has been already processed.
+     * It runs on the polling thread, within the poll.
+     */
+    private class CommitOnRevokeListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            long deadline = System.currentTimeMillis() + shutdownTimeout;
+            // the records of the revoked partitions handed to the workers are given time to complete
+            while (partitions.stream().anyMatch(p -> offsetTrackers.containsKey(p) && offsetTrackers.get(p).hasIncomplete())
+                    && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            commitCompleted(true);
+            for (TopicPartition partition : partitions) {
+                OffsetTracker tracker = offsetTrackers.remove(partition);
+                if (tracker != null) {
+                    // the records still being retried give up, the new owner reads them again
+                    tracker.clear();
+                }
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        }
     }
 }
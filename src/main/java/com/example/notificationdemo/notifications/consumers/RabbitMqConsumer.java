@@ -1,24 +1,63 @@
 package com.example.notificationdemo.notifications.consumers;
 
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.RabbitMqConnectionManager;
+import com.example.notificationdemo.notifications.metrics.ConsumerMetrics;
 import com.example.notificationdemo.notifications.producers.RabbitMqEventProducer;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.utils.Drainable;
+import com.example.notificationdemo.utils.JobRuntime;
 import com.example.notificationdemo.utils.Properties;
+import com.example.notificationdemo.utils.SharedExecutors;
 import com.rabbitmq.client.*;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class acts as a consumer for the {@link RabbitMqEventProducer}.
  * It creates a queue by specifying the notification id and the exchange name of the related RabbitMQ exchange.
  * The new queue is then subscribed to the given RabbitMQ exchange in order to receive and buffer all the incoming messages.
  * Every RabbitMqConsumer instance for a specific notification id has its own copy of the messages.
+ * Each consumer owns a channel opened on the connections of the shared {@link RabbitMqConnectionManager}.
+ * With 'rabbitmq.consumer.manual_ack' the messages are acknowledged only once handled, so they are redelivered after a crash:
+ * the broker pushes up to 'rabbitmq.consumer.prefetch' unacknowledged messages, handled in parallel by 'rabbitmq.consumer.workers' threads,
+ * and the handled ones are acknowledged in batches of 'rabbitmq.consumer.ack_batch' messages.
+ * A message whose handling fails is retried up to 'rabbitmq.consumer.max_attempts' times, counted by its 'x-attempts' header.
+ * Once stopped it cancels its subscription and lets the deliveries being handled complete before closing its channel.
  */
-public class RabbitMqConsumer {
+public class RabbitMqConsumer implements Drainable {
+
+    /**
+     * The name of the header counting the failed handlings of a message.
+     */
+    public static final String ATTEMPTS_HEADER = "x-attempts";
 
     private String eventName;
     private Channel channel;
     private String queue;
     private String exchange;
+    private volatile String consumerTag;
+    private final AtomicInteger handling = new AtomicInteger();
+    private ExecutorService workers;
+    private int ackBatch;
+    // the delivery tags settled by the workers above the low watermark, with whether their handling succeeded
+    private final TreeMap<Long, Boolean> settled = new TreeMap<>();
+    // every delivery tag up to the low watermark is settled
+    private long watermark;
+    // the highest handled delivery tag up to the low watermark not yet acknowledged, with the number of handled deliveries it covers
+    private long ackable;
+    private int ackablePending;
+    private long lastDelivered;
+    private final int maxAttempts = Integer.parseInt(Properties.get("rabbitmq.consumer.max_attempts"));
+    private final ConsumerMetrics metrics;
     private static int queueNumber = -1;
 
     /**
@@ -48,7 +87,7 @@ public class RabbitMqConsumer {
      * @throws TimeoutException
      */
     public static RabbitMqConsumer create(String eventName, String exchangeName, String queueName) throws IOException, TimeoutException {
-        return new RabbitMqConsumer(eventName, exchangeName, queueName, channel());
+        return new RabbitMqConsumer(eventName, exchangeName, queueName, RabbitMqConnectionManager.getInstance().newChannel());
     }
 
     /**
@@ -58,13 +97,14 @@ public class RabbitMqConsumer {
      * @param producer the instance of {@link RabbitMqEventProducer}
      * @return the RabbitMqConsumer
      * @throws IOException
+     * @throws TimeoutException
      */
-    public static RabbitMqConsumer createConsumerFromProducer(final RabbitMqEventProducer producer) throws IOException {
+    public static RabbitMqConsumer createConsumerFromProducer(final RabbitMqEventProducer producer) throws IOException, TimeoutException {
         queueNumber++;
         return RabbitMqConsumer.createConsumerFromProducer(producer, producer.getEventName()+"-queue"+queueNumber+"");
     }
 
-    // when used in the same application we can reuse the channel and get the input data from a given notification producer
+    // when used in the same application we can reuse the connections and get the input data from a given notification producer
 
     /**
      * Returns an instance of {@link RabbitMqConsumer} from the given {@link RabbitMqEventProducer}.
@@ -74,9 +114,10 @@ public class RabbitMqConsumer {
      * @param queueName the name of a RabbitMQ queue to link to, or to create
      * @return the RabbitMqConsumer
      * @throws IOException
+     * @throws TimeoutException
      */
-    public static RabbitMqConsumer createConsumerFromProducer(final RabbitMqEventProducer producer, String queueName) throws IOException {
-        return new RabbitMqConsumer(producer.getEventName(), producer.getExchange(), queueName, producer.getChannel());
+    public static RabbitMqConsumer createConsumerFromProducer(final RabbitMqEventProducer producer, String queueName) throws IOException, TimeoutException {
+        return new RabbitMqConsumer(producer.getEventName(), producer.getExchange(), queueName, producer.getConnectionManager().newChannel());
     }
 
     private RabbitMqConsumer(String eventName, String exchangeName, String queueName, final Channel channel) throws IOException {
@@ -84,21 +125,13 @@ public class RabbitMqConsumer {
         this.exchange = exchangeName;
         this.channel = channel;
         this.queue = queueName;
+        this.metrics = ConsumerMetrics.of("rabbitmq", eventName);
         if (Boolean.TRUE.equals(Boolean.parseBoolean(Properties.get("rabbitmq.enable.queue.create")))) {
             createQueue();
         }
         bindQueue();
     }
 
-    private static Channel channel() throws IOException, TimeoutException {
-        ConnectionFactory factory = new ConnectionFactory();
-        factory.setHost(Properties.get("rabbitmq.host"));
-        factory.setPort(Integer.parseInt(Properties.get("rabbitmq.port")));
-        factory.setUsername(Properties.get("rabbitmq.username"));
-        factory.setPassword(Properties.get("rabbitmq.password"));
-        return factory.newConnection().createChannel();
-    }
-
     private void createQueue() throws IOException {
         this.channel.queueDeclare(this.queue, false, false, false, null);
     }
@@ -109,12 +142,216 @@ public class RabbitMqConsumer {
 
     /**
      * Registers a callback when a new message is received in the queue.
+     * If the 'rabbitmq.consumer.manual_ack' property is set to 'true' the messages are acknowledged once handled,
+     * see {@link #onReadMessageAcknowledged(DeliverCallback, int, int, int)}, otherwise as soon as they are delivered.
      *
      * @param deliverCallback the action that must be performed at the reading of a new message from the queue
      * @throws IOException
      */
     public void onReadMessage(DeliverCallback deliverCallback) throws IOException {
-        this.channel.basicConsume(this.queue, true, deliverCallback, consumerTag -> { });
+        if (Boolean.parseBoolean(Properties.get("rabbitmq.consumer.manual_ack"))) {
+            this.onReadMessageAcknowledged(deliverCallback,
+                    Integer.parseInt(Properties.get("rabbitmq.consumer.prefetch")),
+                    Integer.parseInt(Properties.get("rabbitmq.consumer.workers")),
+                    Integer.parseInt(Properties.get("rabbitmq.consumer.ack_batch")));
+            return;
+        }
+        this.consumerTag = this.channel.basicConsume(this.queue, true, (consumerTag, delivery) -> {
+            this.handling.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                deliverCallback.handle(consumerTag, delivery);
+                this.metrics.handled(start);
+            } catch (IOException | RuntimeException e) {
+                this.metrics.failed(start);
+                throw e;
+            } finally {
+                this.handling.decrementAndGet();
+            }
+        }, consumerTag -> { });
+        JobRuntime.getInstance().registerConsumer(this);
+    }
+
+    /**
+     * Registers a callback when a new message is received in the queue, acknowledging each message only once handled.
+     * The broker pushes at most 'prefetch' messages not yet acknowledged, so the memory they take is bounded,
+     * and they are handled in parallel by a pool of 'workers' threads, so the callback must be thread safe.
+     * The handled messages are acknowledged with a single multiple acknowledgement every 'ackBatch' messages,
+     * or as soon as no delivered message is still being handled.
+     * A message whose handling fails is published again at the tail of the queue, with the 'x-attempts' header counting its failures,
+     * and discarded, or dead lettered if the queue has a dead letter exchange, once it failed 'rabbitmq.consumer.max_attempts' times.
+     * Unlike the redelivered flag, the header isn't set by a redelivery after a crash, so such a message still gets all its attempts.
+     *
+     * @param deliverCallback the action that must be performed at the reading of a new message from the queue
+     * @param prefetch the maximum number of messages delivered and not yet acknowledged
+     * @param workers the number of threads handling the messages
+     * @param ackBatch the number of handled messages acknowledged at once, it should be well below the prefetch
+     * @throws IOException
+     */
+    public void onReadMessageAcknowledged(DeliverCallback deliverCallback, int prefetch, int workers, int ackBatch) throws IOException {
+        this.ackBatch = Math.max(1, ackBatch);
+        this.workers = Executors.newFixedThreadPool(workers, SharedExecutors.consumerThreadFactory("RabbitMqConsumer-" + this.queue));
+        this.channel.basicQos(prefetch);
+        this.consumerTag = this.channel.basicConsume(this.queue, false, (consumerTag, delivery) -> {
+            this.handling.incrementAndGet();
+            long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+            synchronized (this.settled) {
+                this.lastDelivered = deliveryTag;
+            }
+            try {
+                this.workers.execute(() -> {
+                    boolean handled = false;
+                    long start = System.nanoTime();
+                    try {
+                        deliverCallback.handle(consumerTag, delivery);
+                        handled = true;
+                        this.metrics.handled(start);
+                    } catch (IOException | RuntimeException e) {
+                        this.metrics.failed(start);
+                        e.printStackTrace();
+                    } finally {
+                        this.settle(delivery, handled);
+                        this.handling.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the consumer is closing: the message is redelivered once the channel is closed
+                this.handling.decrementAndGet();
+            }
+        }, consumerTag -> { });
+        JobRuntime.getInstance().registerConsumer(this);
+    }
+
+    /**
+     * Settles a delivery: a failed one is either published again for a new attempt, and then acknowledged like a handled one,
+     * or rejected at once after its last attempt, while the handled ones are acknowledged in batches
+     * with a multiple acknowledgement of the highest handled delivery tag below which every delivery is settled.
+     *
+     * @param delivery the delivery
+     * @param handled whether the message has been handled
+     */
+    private void settle(Delivery delivery, boolean handled) {
+        long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+        synchronized (this.settled) {
+            try {
+                if (!handled) {
+                    handled = retry(delivery);
+                    if (!handled) {
+                        this.channel.basicNack(deliveryTag, false, false);
+                    }
+                }
+                this.settled.put(deliveryTag, handled);
+                Boolean next;
+                while ((next = this.settled.remove(this.watermark + 1)) != null) {
+                    this.watermark++;
+                    if (next) {
+                        this.ackable = this.watermark;
+                        this.ackablePending++;
+                    }
+                }
+                // the acknowledged tag must be a pending one, so it is the highest handled delivery, never a rejected one
+                if (this.ackable > 0 && (this.ackablePending >= this.ackBatch || this.watermark == this.lastDelivered)) {
+                    this.channel.basicAck(this.ackable, true);
+                    this.ackable = 0;
+                    this.ackablePending = 0;
+                }
+            } catch (IOException | ShutdownSignalException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Publishes a failed message again on the queue, with its 'x-attempts' header incremented, unless it has no attempt left.
+     *
+     * @param delivery the failed delivery
+     * @return true if the message has been published again, so the failed delivery can be acknowledged
+     * @throws IOException
+     */
+    private boolean retry(Delivery delivery) throws IOException {
+        Map<String, Object> headers = delivery.getProperties().getHeaders();
+        Object previous = headers != null ? headers.get(ATTEMPTS_HEADER) : null;
+        int attempts = (previous instanceof Number ? ((Number) previous).intValue() : 0) + 1;
+        if (attempts >= this.maxAttempts) {
+            return false;
+        }
+        Map<String, Object> retried = headers != null ? new HashMap<>(headers) : new HashMap<>();
+        retried.put(ATTEMPTS_HEADER, attempts);
+        // the default exchange routes the message to this queue only, not to the other queues bound to the exchange
+        this.channel.basicPublish("", this.queue, delivery.getProperties().builder().headers(retried).build(), delivery.getBody());
+        return true;
+    }
+
+    /**
+     * Cancels the subscription to the queue: the broker stops delivering messages to the consumer.
+     */
+    @Override
+    public void stop() {
+        String consumerTag = this.consumerTag;
+        if (consumerTag == null || !this.channel.isOpen()) {
+            return;
+        }
+        try {
+            this.channel.basicCancel(consumerTag);
+        } catch (IOException | ShutdownSignalException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits for the deliveries being handled, if any, to complete.
+     * In manual acknowledgement mode, the handled ones are acknowledged by then.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if no delivery is being handled
+     * @throws InterruptedException
+     */
+    @Override
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (this.handling.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Closes the channel of the consumer, and its workers if any.
+     * The messages not yet acknowledged are requeued by the broker.
+     */
+    @Override
+    public void close() {
+        JobRuntime.getInstance().unregister(this);
+        if (this.workers != null) {
+            this.workers.shutdown();
+        }
+        if (!this.channel.isOpen()) {
+            return;
+        }
+        try {
+            this.channel.close();
+        } catch (IOException | TimeoutException | ShutdownSignalException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the payload of the delivered message as JSON text,
+     * decompressed according to the AMQP content encoding of the message and decoded by the codec matching its content type.
+     *
+     * @param delivery the delivered message
+     * @return the payload as JSON text
+     * @throws IOException if no codec can decode the payload
+     */
+    public static String text(Delivery delivery) throws IOException {
+        try {
+            return PayloadCodecs.toText(delivery.getProperties().getContentType(), delivery.getProperties().getContentEncoding(), delivery.getBody());
+        } catch (NotificationException e) {
+            throw new IOException(e.getMessage());
+        }
     }
 
 }
@@ -1,19 +1,36 @@
 package com.example.notificationdemo.notifications.consumers;
 
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.AwsClientManager;
+import com.example.notificationdemo.notifications.metrics.ConsumerMetrics;
 import com.example.notificationdemo.notifications.producers.SnsEventProducer;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressors;
 import com.example.notificationdemo.utils.ContinuousJob;
 import com.example.notificationdemo.utils.Properties;
-import software.amazon.awssdk.services.sns.SnsClient;
-import software.amazon.awssdk.services.sns.model.SnsException;
+import com.example.notificationdemo.utils.SharedExecutors;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
 import software.amazon.awssdk.services.sns.model.SubscribeRequest;
 import software.amazon.awssdk.services.sns.model.SubscribeResponse;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.model.*;
 
 import javax.naming.OperationNotSupportedException;
-import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
@@ -22,16 +39,51 @@ import java.util.function.Consumer;
  * The new queue is then subscribed to the given SNS Topic in order to receive and buffer all the incoming messages.
  * Every SqsConsumer instance for a specific notification id has its own copy of the messages.
  * It can be started as a {@link ContinuousJob}.
+ * In drain mode it runs a long-poll loop: the receive request itself waits for the messages, so no further backoff is needed.
+ * In batch mode ('aws.sqs.batch.enabled') several pollers receive up to ten messages per long-poll request,
+ * the messages are deleted with a single batch request only after they have been successfully consumed,
+ * and the visibility timeout of the messages still being consumed is extended, so they are not delivered twice.
+ * A message whose consumer throws is left in the queue, and delivered again once its visibility timeout expires.
+ * With virtual threads ('consumers.threads=virtual') the messages of a batch are consumed concurrently.
+ * All the consumers share the non-blocking SQS and SNS clients of the {@link AwsClientManager}.
+ * Once stopped, the pollers complete the batches they received before the shared clients are closed.
+ * Several consumers attached to the same queue ({@link #attach(String, String)}) compete for its messages,
+ * and with 'aws.sqs.autoscale.enabled' the number of pollers of a consumer follows the backlog of the queue.
+ * The backlog is also published as the lag of the consumer, refreshed by the autoscaling
+ * or, without it, every 'metrics.lag.interval' milliseconds.
  */
 public class SqsConsumer extends ContinuousJob {
 
     private String eventName;
-    private SqsClient sqsClient;
+    private SqsAsyncClient sqsClient;
     private String sqsEndpoint;
     private Consumer<Message> onReadConsumer;
+    private final int waitTimeSeconds = Integer.parseInt(Properties.get("aws.sqs.wait_time_seconds"));
+    private final boolean batchMode = Boolean.parseBoolean(Properties.get("aws.sqs.batch.enabled"));
+    private final int visibilityTimeout = Integer.parseInt(Properties.get("aws.sqs.visibility_timeout"));
+    // receipt handles of the messages being consumed, with the time their visibility timeout expires
+    private final Map<String, Long> inFlight = new ConcurrentHashMap<>();
+    private final List<Poller> pollers = new CopyOnWriteArrayList<>();
+    private ExecutorService pollerThreads;
+    private boolean stopped;
+    private final boolean autoscale = Boolean.parseBoolean(Properties.get("aws.sqs.autoscale.enabled"));
+    private final int minPollers = Integer.parseInt(Properties.get("aws.sqs.autoscale.min_pollers"));
+    private final int maxPollers = Integer.parseInt(Properties.get("aws.sqs.autoscale.max_pollers"));
+    private final long autoscaleInterval = Long.parseLong(Properties.get("aws.sqs.autoscale.interval"));
+    private final long targetDrainSeconds = Long.parseLong(Properties.get("aws.sqs.autoscale.target_drain_seconds"));
+    // messages consumed, and time spent consuming them, since the last autoscaling
+    private final AtomicLong consumedMessages = new AtomicLong();
+    private final AtomicLong consumingNanos = new AtomicLong();
+    // messages a single poller consumes per second, as measured while it was busy
+    private volatile double pollerThroughput;
+    private final ConsumerMetrics metrics;
+    private final long lagInterval = Long.parseLong(Properties.get("metrics.lag.interval"));
     private static Integer queueNumber = -1;
 
     private final static String SQS_CREATION_NOT_ALLOWED = "the application is not allowed to create a new AWS SQS queue";
+    // the maximum number of messages of a single receive, delete or change visibility request
+    private final static int SQS_MAX_BATCH_SIZE = 10;
+    private final static ObjectMapper SNS_ENVELOPE_MAPPER = new ObjectMapper();
 
     /**
      * Creates a new instance of a {@link SqsConsumer}.
@@ -47,9 +99,9 @@ public class SqsConsumer extends ContinuousJob {
      */
     public static SqsConsumer create(String eventName, String topicArn) throws URISyntaxException, OperationNotSupportedException {
         queueNumber++;
-        SqsClient sqsClient = sqsClient();
-        String sqsEndpoint = createQueue(sqsClient, eventName+"-sqs"+queueNumber+"");
-        return new SqsConsumer(eventName, snsClient(), sqsClient, topicArn, sqsEndpoint);
+        AwsClientManager clients = AwsClientManager.getInstance();
+        String sqsEndpoint = createQueue(clients.getSqsClient(), eventName+"-sqs"+queueNumber+"");
+        return new SqsConsumer(eventName, clients.getSnsClient(), clients.getSqsClient(), topicArn, sqsEndpoint);
     }
 
     /**
@@ -64,8 +116,23 @@ public class SqsConsumer extends ContinuousJob {
      * @throws OperationNotSupportedException
      */
     public static SqsConsumer create(String eventName, String topicArn, String sqsEndpoint) throws URISyntaxException, OperationNotSupportedException {
-        SqsClient sqsClient = sqsClient();
-        return new SqsConsumer(eventName, snsClient(), sqsClient, topicArn, sqsEndpoint);
+        AwsClientManager clients = AwsClientManager.getInstance();
+        return new SqsConsumer(eventName, clients.getSnsClient(), clients.getSqsClient(), topicArn, sqsEndpoint);
+    }
+
+    /**
+     * Creates a new instance of a {@link SqsConsumer} reading from an existing SQS queue,
+     * already subscribed to its SNS topic: all the consumers attached to the same queue,
+     * in this or other instances of the application, compete for its messages and each message is consumed once.
+     *
+     * @param eventName the name of the event
+     * @param sqsEndpoint the endpoint of an existing SQS queue
+     * @return the SqsConsumer
+     * @throws URISyntaxException
+     * @throws OperationNotSupportedException
+     */
+    public static SqsConsumer attach(String eventName, String sqsEndpoint) throws URISyntaxException, OperationNotSupportedException {
+        return new SqsConsumer(eventName, null, AwsClientManager.getInstance().getSqsClient(), null, sqsEndpoint);
     }
 
     /**
@@ -81,7 +148,7 @@ public class SqsConsumer extends ContinuousJob {
      */
     public static SqsConsumer createFromProducer(final SnsEventProducer snsChannel) throws URISyntaxException, OperationNotSupportedException {
         queueNumber++;
-        SqsClient sqsClient = sqsClient();
+        SqsAsyncClient sqsClient = AwsClientManager.getInstance().getSqsClient();
         String sqsEndpoint = createQueue(sqsClient, snsChannel.getEventName()+"-sqs"+queueNumber+"");
         return new SqsConsumer(snsChannel.getEventName(), snsChannel.getSnsClient(), sqsClient, snsChannel.getTopicArn(), sqsEndpoint);
     }
@@ -97,30 +164,24 @@ public class SqsConsumer extends ContinuousJob {
      * @throws OperationNotSupportedException
      */
     public static SqsConsumer createFromProducer(final SnsEventProducer snsChannel, String sqsEndpoint) throws URISyntaxException, OperationNotSupportedException {
-        SqsClient sqsClient = sqsClient();
-        return new SqsConsumer(snsChannel.getEventName(), snsChannel.getSnsClient(), sqsClient(), snsChannel.getTopicArn(), sqsEndpoint);
+        return new SqsConsumer(snsChannel.getEventName(), snsChannel.getSnsClient(), AwsClientManager.getInstance().getSqsClient(),
+                snsChannel.getTopicArn(), sqsEndpoint);
     }
 
-    private SqsConsumer(String eventName, SnsClient snsClient, SqsClient sqsClient, String topicArn, String sqsEndpoint) throws URISyntaxException, OperationNotSupportedException {
+    private SqsConsumer(String eventName, SnsAsyncClient snsClient, SqsAsyncClient sqsClient, String topicArn, String sqsEndpoint) throws URISyntaxException, OperationNotSupportedException {
         this.eventName = eventName;
         this.sqsClient = sqsClient;
         this.sqsEndpoint = sqsEndpoint;
-        subscribeToTopic(snsClient, topicArn, sqsEndpoint);
-    }
-
-    private static SqsClient sqsClient() throws URISyntaxException {
-        return (Properties.get("aws.endpoint") != null)
-                ? SqsClient.builder().endpointOverride(new URI(Properties.get("aws.endpoint"))).build()
-                : SqsClient.builder().build();
-    }
-
-    private static SnsClient snsClient() throws URISyntaxException {
-        return (Properties.get("aws.endpoint") != null)
-                ? SnsClient.builder().endpointOverride(new URI(Properties.get("aws.endpoint"))).build()
-                : SnsClient.builder().build();
+        this.metrics = ConsumerMetrics.of("sqs", eventName).trackLag(sqsEndpoint);
+        if (topicArn != null) {
+            subscribeToTopic(snsClient, topicArn, sqsEndpoint);
+        }
+        // the long poll already waits for the messages to come
+        this.idleBackoff = 0;
+        this.maxIdleBackoff = 0;
     }
 
-    private static String createQueue(SqsClient sqsClient, String queueName) throws OperationNotSupportedException {
+    private static String createQueue(SqsAsyncClient sqsClient, String queueName) throws OperationNotSupportedException {
         if (Boolean.FALSE.equals(Boolean.parseBoolean(Properties.get("aws.enable.sqs.create")))) {
             throw new OperationNotSupportedException(SQS_CREATION_NOT_ALLOWED);
         }
@@ -128,17 +189,17 @@ public class SqsConsumer extends ContinuousJob {
             CreateQueueRequest createQueueRequest = CreateQueueRequest.builder()
                     .queueName(queueName)
                     .build();
-            sqsClient.createQueue(createQueueRequest);
+            AwsClientManager.join(sqsClient.createQueue(createQueueRequest));
 
             GetQueueUrlRequest getQueueUrlRequest = GetQueueUrlRequest.builder()
                     .queueName(queueName)
                     .build();
 
-            GetQueueUrlResponse getQueueUrlResponse = sqsClient.getQueueUrl(getQueueUrlRequest);
+            GetQueueUrlResponse getQueueUrlResponse = AwsClientManager.join(sqsClient.getQueueUrl(getQueueUrlRequest));
 
             return getQueueUrlResponse.queueUrl();
-        } catch (SqsException e) {
-            System.err.println(e.awsErrorDetails().errorMessage());
+        } catch (SdkException e) {
+            System.err.println(AwsClientManager.errorMessage(e));
         }
         return "";
     }
@@ -150,26 +211,293 @@ public class SqsConsumer extends ContinuousJob {
      */
     public List<Message> readMessages() {
         try {
-            ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
+            return readMessages(0);
+        } catch (SdkException e) {
+            System.err.println(AwsClientManager.errorMessage(e));
+        }
+        return null;
+    }
+
+    private List<Message> readMessages(int waitTimeSeconds) {
+        ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
+                .queueUrl(this.sqsEndpoint)
+                .maxNumberOfMessages(5)
+                .waitTimeSeconds(waitTimeSeconds)
+                .build();
+        List<Message> messages = AwsClientManager.join(this.sqsClient.receiveMessage(receiveMessageRequest)).messages();
+        for (Message message : messages) {
+            DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest.builder()
                     .queueUrl(this.sqsEndpoint)
-                    .maxNumberOfMessages(5)
+                    .receiptHandle(message.receiptHandle())
                     .build();
-            List<Message> messages = this.sqsClient.receiveMessage(receiveMessageRequest).messages();
+            AwsClientManager.join(this.sqsClient.deleteMessage(deleteMessageRequest));
+        }
+        return messages;
+    }
+
+    /**
+     * Receives up to ten messages with a long poll, consumes them and deletes the successfully consumed ones
+     * with a single batch request.
+     *
+     * @return the number of messages received
+     */
+    public int pollBatch() {
+        ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
+                .queueUrl(this.sqsEndpoint)
+                .maxNumberOfMessages(SQS_MAX_BATCH_SIZE)
+                .waitTimeSeconds(this.waitTimeSeconds)
+                .visibilityTimeout(this.visibilityTimeout)
+                .build();
+        List<Message> messages = AwsClientManager.join(this.sqsClient.receiveMessage(receiveMessageRequest)).messages();
+        this.metrics.batch(messages.size());
+        long consumingStarted = System.nanoTime();
+        long visibilityDeadline = System.currentTimeMillis() + this.visibilityTimeout * 1000L;
+        messages.forEach(message -> this.inFlight.put(message.receiptHandle(), visibilityDeadline));
+
+        List<DeleteMessageBatchRequestEntry> consumed = new ArrayList<>(messages.size());
+        if (SharedExecutors.isVirtualThreads()) {
+            // every message of the batch is consumed on a virtual thread of its own, the batch is deleted once all are done
+            List<CompletableFuture<Boolean>> results = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                results.add(CompletableFuture.supplyAsync(() -> this.consume(message), SharedExecutors.handlers()));
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                if (results.get(i).join()) {
+                    consumed.add(deleteEntry(consumed.size(), messages.get(i)));
+                }
+            }
+        } else {
             for (Message message : messages) {
-                DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest.builder()
-                        .queueUrl(this.sqsEndpoint)
-                        .receiptHandle(message.receiptHandle())
-                        .build();
-                this.sqsClient.deleteMessage(deleteMessageRequest);
+                if (this.consume(message)) {
+                    consumed.add(deleteEntry(consumed.size(), message));
+                }
             }
-            return messages;
-        } catch (SqsException e) {
-            System.err.println(e.awsErrorDetails().errorMessage());
         }
-        return null;
+        if (!messages.isEmpty()) {
+            this.consumedMessages.addAndGet(messages.size());
+            this.consumingNanos.addAndGet(System.nanoTime() - consumingStarted);
+        }
+        if (!consumed.isEmpty()) {
+            DeleteMessageBatchResponse response = AwsClientManager.join(this.sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                    .queueUrl(this.sqsEndpoint)
+                    .entries(consumed)
+                    .build()));
+            response.failed().forEach(failure -> System.err.println(
+                    String.format("SQS message %s of %s not deleted: %s", failure.id(), this.sqsEndpoint, failure.message())));
+        }
+        return messages.size();
     }
 
-    private void subscribeToTopic(SnsClient snsClient, String topicArn, String sqsEndpoint) {
+    private boolean consume(Message message) {
+        try {
+            this.handle(message);
+            return true;
+        } catch (RuntimeException e) {
+            // the message stays in the queue and it is delivered again once its visibility timeout expires
+            e.printStackTrace();
+            return false;
+        } finally {
+            this.inFlight.remove(message.receiptHandle());
+        }
+    }
+
+    private void handle(Message message) {
+        long start = System.nanoTime();
+        try {
+            this.onReadConsumer.accept(message);
+        } catch (RuntimeException e) {
+            this.metrics.failed(start);
+            throw e;
+        }
+        this.metrics.handled(start);
+    }
+
+    private static DeleteMessageBatchRequestEntry deleteEntry(int id, Message message) {
+        return DeleteMessageBatchRequestEntry.builder()
+                .id(String.valueOf(id))
+                .receiptHandle(message.receiptHandle())
+                .build();
+    }
+
+    /**
+     * Extends the visibility timeout of the messages still being consumed whose timeout is about to expire,
+     * so that slow consumers don't get them delivered again to another poller.
+     */
+    public void extendVisibility() {
+        long now = System.currentTimeMillis();
+        long threshold = now + this.visibilityTimeout * 500L;
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(SQS_MAX_BATCH_SIZE);
+        for (Map.Entry<String, Long> message : this.inFlight.entrySet()) {
+            if (message.getValue() > threshold) continue;
+            entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                    .id(String.valueOf(entries.size()))
+                    .receiptHandle(message.getKey())
+                    .visibilityTimeout(this.visibilityTimeout)
+                    .build());
+            // replace() doesn't bring back a message whose consumption completed meanwhile
+            this.inFlight.replace(message.getKey(), now + this.visibilityTimeout * 1000L);
+            if (entries.size() == SQS_MAX_BATCH_SIZE) {
+                changeVisibility(entries);
+                entries.clear();
+            }
+        }
+        if (!entries.isEmpty()) {
+            changeVisibility(entries);
+        }
+    }
+
+    private void changeVisibility(List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+        // the request is not waited for, so the housekeeping task returns at once
+        this.sqsClient.changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest.builder()
+                .queueUrl(this.sqsEndpoint)
+                .entries(entries)
+                .build()).whenComplete((response, exception) -> {
+            if (exception != null) {
+                System.err.println(String.format("visibility of the messages of %s not extended: %s", this.sqsEndpoint, exception.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Returns the approximate number of messages available in the queue, not counting the ones being consumed.
+     *
+     * @return the approximate number of messages in the queue
+     */
+    public long getApproximateNumberOfMessages() {
+        GetQueueAttributesResponse response = AwsClientManager.join(this.sqsClient.getQueueAttributes(GetQueueAttributesRequest.builder()
+                .queueUrl(this.sqsEndpoint)
+                .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)
+                .build()));
+        return Long.parseLong(response.attributes().getOrDefault(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES, "0"));
+    }
+
+    /**
+     * Publishes the approximate number of messages in the queue as the lag of the consumer.
+     */
+    public void refreshLag() {
+        try {
+            this.metrics.lag(this.getApproximateNumberOfMessages());
+        } catch (RuntimeException e) {
+            // a failing housekeeping task would not be executed again
+            System.err.println(String.format("approximate number of messages of %s not read: %s", this.sqsEndpoint, AwsClientManager.errorMessage(e)));
+        }
+    }
+
+    /**
+     * Scales the number of pollers, between 'aws.sqs.autoscale.min_pollers' and 'aws.sqs.autoscale.max_pollers',
+     * to the number needed to consume the approximate number of messages in the queue
+     * within 'aws.sqs.autoscale.target_drain_seconds', given the throughput of a poller measured from the handler latency.
+     * It adds all the missing pollers at once, to absorb bursts, while it removes one poller at a time,
+     * so that a short lull doesn't stop them all.
+     */
+    public void autoscale() {
+        long backlog;
+        try {
+            backlog = this.getApproximateNumberOfMessages();
+        } catch (RuntimeException e) {
+            // a failing housekeeping task would not be executed again
+            System.err.println(String.format("approximate number of messages of %s not read: %s", this.sqsEndpoint, AwsClientManager.errorMessage(e)));
+            return;
+        }
+        this.metrics.lag(backlog);
+        long consumed = this.consumedMessages.getAndSet(0);
+        long nanos = this.consumingNanos.getAndSet(0);
+        if (consumed > 0 && nanos > 0) {
+            this.pollerThroughput = consumed * 1e9 / nanos;
+        }
+        int current = this.getPollers();
+        int desired;
+        if (backlog == 0) {
+            desired = this.minPollers;
+        } else if (this.pollerThroughput == 0) {
+            // nothing has been consumed yet to measure the throughput on
+            desired = current + 1;
+        } else {
+            desired = (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(backlog / (this.pollerThroughput * this.targetDrainSeconds)));
+        }
+        desired = Math.max(this.minPollers, Math.min(this.maxPollers, desired));
+        if (desired > current) {
+            for (int i = current; i < desired; i++) {
+                this.addPoller();
+            }
+        } else if (desired < current) {
+            this.removePoller();
+        }
+    }
+
+    /**
+     * Adds a poller receiving and consuming the messages concurrently with the other ones.
+     */
+    public synchronized void addPoller() {
+        if (this.stopped) {
+            return;
+        }
+        if (this.pollerThreads == null) {
+            this.pollerThreads = SharedExecutors.newConsumerExecutor(this.eventName + "-sqs-poller");
+        }
+        Poller poller = new Poller();
+        this.pollers.add(poller);
+        this.pollerThreads.execute(poller);
+    }
+
+    /**
+     * Removes one of the pollers: it stops once the messages it received are consumed.
+     *
+     * @return false if there was no poller to remove
+     */
+    public synchronized boolean removePoller() {
+        if (this.pollers.isEmpty()) {
+            return false;
+        }
+        this.pollers.remove(this.pollers.size() - 1).running = false;
+        return true;
+    }
+
+    /**
+     * Returns the number of pollers currently running.
+     *
+     * @return the number of pollers
+     */
+    public int getPollers() {
+        return this.pollers.size();
+    }
+
+    /**
+     * Stops the pollers and the periodic execution of the Job.
+     */
+    @Override
+    public synchronized void stop() {
+        this.stopped = true;
+        while (removePoller()) {
+            // every poller completes the batch it is consuming
+        }
+        if (this.pollerThreads != null) {
+            this.pollerThreads.shutdown();
+        }
+        super.stop();
+    }
+
+    /**
+     * Waits for the pollers to consume the messages they received and for the job to complete.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if all the messages received have been consumed in time
+     * @throws InterruptedException
+     */
+    @Override
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        ExecutorService pollerThreads;
+        synchronized (this) {
+            pollerThreads = this.pollerThreads;
+        }
+        if (pollerThreads != null && !pollerThreads.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        return super.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    private void subscribeToTopic(SnsAsyncClient snsClient, String topicArn, String sqsEndpoint) {
         try {
             SubscribeRequest request = SubscribeRequest.builder()
                     .protocol("sqs")
@@ -178,11 +506,47 @@ public class SqsConsumer extends ContinuousJob {
                     .topicArn(topicArn)
                     .build();
 
-            SubscribeResponse result = snsClient.subscribe(request);
+            SubscribeResponse result = AwsClientManager.join(snsClient.subscribe(request));
             System.out.println("Subscription ARN: " + result.subscriptionArn() + "\n\n Status is " + result.sdkHttpResponse().statusCode());
 
-        } catch (SnsException e) {
-            System.err.println(e.awsErrorDetails().errorMessage());
+        } catch (SdkException e) {
+            System.err.println(AwsClientManager.errorMessage(e));
+        }
+    }
+
+    /**
+     * Returns the payload of the message as JSON text.
+     * The message body is the envelope SNS wraps the notification into: the payload is extracted from it and,
+     * if the 'contentTransferEncoding' message attribute flags it as Base64 (binary or compressed payloads),
+     * it is decoded, decompressed according to the 'contentEncoding' attribute
+     * and decoded by the codec matching the 'contentType' attribute.
+     *
+     * @param message the received message
+     * @return the payload as JSON text
+     * @throws NotificationException if the payload can't be decoded
+     */
+    public static String text(Message message) throws NotificationException {
+        JsonNode envelope;
+        try {
+            envelope = SNS_ENVELOPE_MAPPER.readTree(message.body());
+        } catch (JsonProcessingException e) {
+            // not an SNS envelope: the message was sent to the queue as it is
+            return message.body();
+        }
+        if (envelope == null || !envelope.hasNonNull("Message")) {
+            return message.body();
+        }
+        String payload = envelope.get("Message").asText();
+        JsonNode attributes = envelope.path("MessageAttributes");
+        if (!"base64".equals(attributes.path("contentTransferEncoding").path("Value").asText(null))) {
+            return payload;
+        }
+        try {
+            return PayloadCodecs.toText(attributes.path(PayloadCodecs.CONTENT_TYPE_PROPERTY).path("Value").asText(null),
+                    attributes.path(PayloadCompressors.CONTENT_ENCODING_PROPERTY).path("Value").asText(null),
+                    Base64.getDecoder().decode(payload));
+        } catch (IllegalArgumentException e) {
+            throw new NotificationException(e.getMessage());
         }
     }
 
@@ -203,12 +567,28 @@ public class SqsConsumer extends ContinuousJob {
         this.readMessages().forEach(
                 message -> {
                     if (message != null) {
-                        this.onReadConsumer.accept(message);
+                        this.handle(message);
                     }
                 }
         );
     }
 
+    /**
+     * Reads the messages with a long poll, waiting for them up to the 'aws.sqs.wait_time_seconds', and consumes them.
+     * A failing receive request is propagated, so the job waits the error backoff before trying again.
+     *
+     * @return the number of messages consumed
+     */
+    @Override
+    public int drain() {
+        List<Message> messages = this.readMessages(this.waitTimeSeconds);
+        this.metrics.batch(messages.size());
+        for (Message message : messages) {
+            this.handle(message);
+        }
+        return messages.size();
+    }
+
     /**
      * Starts listening and reacting to the messages.
      * Gets a {@link Consumer} to consume the read messages.
@@ -218,7 +598,54 @@ public class SqsConsumer extends ContinuousJob {
     public void onReadStart(Consumer<Message> consumer) {
         // set the callback
         this.onReadConsumer = consumer;
+        if (!this.batchMode || !this.autoscale) {
+            // the autoscaling already reads the backlog of the queue
+            this.startHousekeeping(this::refreshLag, this.lagInterval);
+        }
+        if (this.batchMode) {
+            int pollers = Integer.parseInt(Properties.get("aws.sqs.pollers"));
+            if (this.autoscale) {
+                pollers = Math.max(this.minPollers, Math.min(this.maxPollers, pollers));
+                this.startHousekeeping(this::autoscale, this.autoscaleInterval);
+            }
+            for (int i = 0; i < pollers; i++) {
+                this.addPoller();
+            }
+            // the visibility of the messages being consumed is checked three times per visibility timeout
+            this.startHousekeeping(this::extendVisibility, this.visibilityTimeout * 1000L / 3);
+            return;
+        }
         // start the cyclic execution of the job
-        this.start();
+        if (isDrainEnabled()) {
+            this.startDraining();
+        } else {
+            this.start();
+        }
+    }
+
+    /**
+     * A poller receiving and consuming the messages in a loop, until it is removed.
+     */
+    private class Poller implements Runnable {
+
+        private volatile boolean running = true;
+
+        @Override
+        public void run() {
+            while (this.running) {
+                try {
+                    pollBatch();
+                } catch (RuntimeException e) {
+                    // the SQS requests failed: the poller waits before trying again
+                    e.printStackTrace();
+                    try {
+                        Thread.sleep(errorBackoff);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
     }
 }
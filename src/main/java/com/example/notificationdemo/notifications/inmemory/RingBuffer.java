@@ -0,0 +1,192 @@
+package com.example.notificationdemo.notifications.inmemory;
+
+import com.example.notificationdemo.notifications.NotificationException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RingBuffer is a bounded, lock-free, multi producer and multi subscriber buffer of events, in the Disruptor style.
+ * The producers claim the slots through a compare and set on the cursor, fill them and mark them as published.
+ * Every subscriber reads all the events through its own {@link Sequence} (topic semantics),
+ * and a slot can be claimed again only once every subscriber moved past it:
+ * when the slowest subscriber lags a whole buffer behind, the producers wait for it or fail (backpressure).
+ *
+ * @param <E> the type of the events
+ */
+public class RingBuffer<E> {
+
+    private final Object[] entries;
+    private final int mask;
+    private final int indexShift;
+    private final AtomicIntegerArray published;
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence gatingCache = new Sequence(-1);
+    private final List<Sequence> subscribers = new CopyOnWriteArrayList<>();
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Basic constructor for {@link RingBuffer}.
+     *
+     * @param size the number of slots, a power of 2
+     * @param waitStrategy the strategy the subscribers wait for new events with
+     */
+    public RingBuffer(int size, WaitStrategy waitStrategy) {
+        if (size < 1 || Integer.bitCount(size) != 1) throw new IllegalArgumentException("Size must be a power of 2");
+        this.entries = new Object[size];
+        this.mask = size - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(size);
+        this.published = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Publishes an event, waiting up to the given timeout for a free slot.
+     *
+     * @param event the event
+     * @param timeout the maximum time in milliseconds to wait for a free slot, zero to fail right away when the buffer is full
+     * @return the sequence of the event
+     * @throws NotificationException if no slot got free in time
+     */
+    public long publish(E event, long timeout) throws NotificationException {
+        long sequence = claim(timeout);
+        entries[(int) sequence & mask] = event;
+        // the round number marks the slot as published for this lap of the buffer
+        published.lazySet((int) sequence & mask, (int) (sequence >>> indexShift));
+        waitStrategy.signalAllWhenBlocking();
+        return sequence;
+    }
+
+    /**
+     * Adds a subscriber, which receives the events published from now on.
+     * Until it is removed the subscriber must keep up, or the producers are slowed down.
+     *
+     * @return the sequence of the last event the subscriber is considered to have read
+     */
+    public Sequence subscribe() {
+        Sequence sequence = new Sequence(cursor.get());
+        subscribers.add(sequence);
+        // the cursor is read again once the subscriber holds the producers back, so it never starts from a reused slot
+        sequence.set(cursor.get());
+        return sequence;
+    }
+
+    /**
+     * Removes a subscriber, so that the producers don't wait for it anymore.
+     *
+     * @param sequence the sequence returned by {@link #subscribe()}
+     */
+    public void unsubscribe(Sequence sequence) {
+        subscribers.remove(sequence);
+    }
+
+    /**
+     * Waits for the events following the given sequence and returns the sequence of the last one readable.
+     *
+     * @param sequence the sequence of the next event to be read
+     * @param stopped the flag telling the subscriber has been stopped
+     * @return the last sequence published without gaps, lower than the given sequence only if the subscriber has been stopped
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public long waitFor(long sequence, WaitStrategy.StopFlag stopped) throws InterruptedException {
+        while (true) {
+            long available = waitStrategy.waitFor(sequence, cursor, stopped);
+            if (available < sequence) return available;
+            long highest = highestPublished(sequence, available);
+            if (highest >= sequence || stopped.isStopped()) return highest;
+            // the next slot is claimed but not filled yet: its producer is about to publish it
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Returns the event of the given sequence, which must be published and not yet read by the subscriber.
+     *
+     * @param sequence the event sequence
+     * @return the event
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the buffer size
+     */
+    public int getSize() {
+        return entries.length;
+    }
+
+    /**
+     * Returns the number of events published and not yet read by the slowest subscriber.
+     *
+     * @return the backlog
+     */
+    public long getBacklog() {
+        long current = cursor.get();
+        return current - minimumSequence(current);
+    }
+
+    /**
+     * Returns the sequence of the last event claimed by a producer.
+     *
+     * @return the cursor
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    private long claim(long timeout) throws NotificationException {
+        long deadline = 0;
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - entries.length;
+            long cachedGating = gatingCache.get();
+            if (wrapPoint > cachedGating || cachedGating > current) {
+                long gating = minimumSequence(current);
+                if (wrapPoint > gating) {
+                    if (deadline == 0) {
+                        if (timeout <= 0) throw full();
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                    } else if (System.nanoTime() - deadline > 0) {
+                        throw full();
+                    }
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                gatingCache.set(gating);
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private NotificationException full() {
+        return new NotificationException(String.format("In-memory buffer of %d events is full", entries.length));
+    }
+
+    private long minimumSequence(long minimum) {
+        for (Sequence subscriber : subscribers) {
+            minimum = Math.min(minimum, subscriber.get());
+        }
+        return minimum;
+    }
+
+    private long highestPublished(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            if (published.get((int) sequence & mask) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return to;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.notificationdemo.notifications.inmemory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Sequence is a counter of the {@link RingBuffer} slots, written by a single thread and read by the others.
+ * The value is padded on both sides so that two sequences never share a cache line,
+ * which would make the threads updating them slow down each other.
+ */
+public final class Sequence extends SequenceValue {
+
+    @SuppressWarnings("unused")
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    /**
+     * Basic constructor for {@link Sequence}.
+     *
+     * @param initialValue the initial value
+     */
+    public Sequence(long initialValue) {
+        VALUE.setRelease(this, initialValue);
+    }
+
+    /**
+     * Returns the current value.
+     *
+     * @return the value
+     */
+    public long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    /**
+     * Sets the value, making the writes done before visible to the threads reading it.
+     *
+     * @param value the new value
+     */
+    public void set(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    /**
+     * Sets the value if it is still the expected one.
+     *
+     * @param expected the expected value
+     * @param value the new value
+     * @return true if the value has been set
+     */
+    public boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
+
+@SuppressWarnings("unused")
+class SequencePadding {
+    private long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends SequencePadding {
+
+    static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private volatile long value;
+}
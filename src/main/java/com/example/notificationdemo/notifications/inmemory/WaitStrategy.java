@@ -0,0 +1,187 @@
+package com.example.notificationdemo.notifications.inmemory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WaitStrategy defines how the subscribers of a {@link RingBuffer} wait for new events,
+ * trading the latency of the delivery for the CPU burnt while there is nothing to do:
+ * 'busy_spin' and 'yielding' keep a core busy for the lowest latency, 'sleeping' parks the thread for a little while,
+ * 'blocking' waits to be woken up by the producers, costing them a signal whenever a subscriber is asleep.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until the cursor reaches the given sequence or the subscriber is stopped.
+     *
+     * @param sequence the sequence the subscriber waits for
+     * @param cursor the cursor of the claimed sequences
+     * @param stopped the flag telling the subscriber has been stopped
+     * @return the cursor value, lower than the given sequence only if the subscriber has been stopped
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    long waitFor(long sequence, Sequence cursor, StopFlag stopped) throws InterruptedException;
+
+    /**
+     * Wakes up the subscribers waiting for new events, if the strategy lets them block.
+     */
+    void signalAllWhenBlocking();
+
+    /**
+     * Returns the {@link WaitStrategy} with the given name: 'busy_spin', 'yielding', 'sleeping' or 'blocking'.
+     *
+     * @param name the strategy name
+     * @return a new instance of the strategy
+     */
+    static WaitStrategy forName(String name) {
+        switch (name == null ? "" : name.toLowerCase()) {
+            case "busy_spin":
+                return busySpin();
+            case "yielding":
+                return yielding();
+            case "sleeping":
+                return sleeping();
+            case "blocking":
+                return blocking();
+            default:
+                System.err.println(String.format("Unknown wait strategy %s, falling back to blocking", name));
+                return blocking();
+        }
+    }
+
+    /**
+     * Returns a strategy spinning on the cursor: the lowest latency, one core busy per subscriber.
+     *
+     * @return the strategy
+     */
+    static WaitStrategy busySpin() {
+        return new WaitStrategy() {
+            @Override
+            public long waitFor(long sequence, Sequence cursor, StopFlag stopped) {
+                long available;
+                while ((available = cursor.get()) < sequence && !stopped.isStopped()) {
+                    Thread.onSpinWait();
+                }
+                return available;
+            }
+
+            @Override
+            public void signalAllWhenBlocking() {
+            }
+        };
+    }
+
+    /**
+     * Returns a strategy spinning for a while and then yielding the core to the other threads.
+     *
+     * @return the strategy
+     */
+    static WaitStrategy yielding() {
+        return new WaitStrategy() {
+            @Override
+            public long waitFor(long sequence, Sequence cursor, StopFlag stopped) {
+                int spins = 100;
+                long available;
+                while ((available = cursor.get()) < sequence && !stopped.isStopped()) {
+                    if (spins > 0) {
+                        spins--;
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                return available;
+            }
+
+            @Override
+            public void signalAllWhenBlocking() {
+            }
+        };
+    }
+
+    /**
+     * Returns a strategy spinning, then yielding and finally parking the thread for 100 microseconds at a time.
+     *
+     * @return the strategy
+     */
+    static WaitStrategy sleeping() {
+        return new WaitStrategy() {
+            @Override
+            public long waitFor(long sequence, Sequence cursor, StopFlag stopped) throws InterruptedException {
+                int retries = 200;
+                long available;
+                while ((available = cursor.get()) < sequence && !stopped.isStopped()) {
+                    if (retries > 100) {
+                        Thread.onSpinWait();
+                    } else if (retries > 0) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                        if (Thread.interrupted()) throw new InterruptedException();
+                    }
+                    retries = Math.max(retries - 1, 0);
+                }
+                return available;
+            }
+
+            @Override
+            public void signalAllWhenBlocking() {
+            }
+        };
+    }
+
+    /**
+     * Returns a strategy blocking the thread until a producer publishes a new event:
+     * no CPU burnt while idle, the producers take a lock only while some subscriber is asleep.
+     *
+     * @return the strategy
+     */
+    static WaitStrategy blocking() {
+        return new WaitStrategy() {
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition published = lock.newCondition();
+            private volatile boolean signalNeeded;
+
+            @Override
+            public long waitFor(long sequence, Sequence cursor, StopFlag stopped) throws InterruptedException {
+                long available;
+                while ((available = cursor.get()) < sequence && !stopped.isStopped()) {
+                    lock.lock();
+                    try {
+                        signalNeeded = true;
+                        if (cursor.get() < sequence && !stopped.isStopped()) {
+                            // the timeout covers a stop signalled without holding the lock
+                            published.await(10, TimeUnit.MILLISECONDS);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return available;
+            }
+
+            @Override
+            public void signalAllWhenBlocking() {
+                if (signalNeeded) {
+                    lock.lock();
+                    try {
+                        signalNeeded = false;
+                        published.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * StopFlag tells whether a waiting subscriber has been stopped.
+     */
+    @FunctionalInterface
+    interface StopFlag {
+        boolean isStopped();
+    }
+}
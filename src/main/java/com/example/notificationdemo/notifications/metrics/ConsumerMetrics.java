@@ -0,0 +1,124 @@
+package com.example.notificationdemo.notifications.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConsumerMetrics records the deliveries of a consumer, tagged with its transport and event name:
+ * the time the callback takes to handle each message, the messages received and failed, the size of the batches
+ * received at once and, for the transports which can measure it, the lag of the consumer.
+ * The meters are looked up once, so the consumers sharing the transport and the event name share them too,
+ * except the lag, which is tracked per source (a queue, or a consumer of a group): the consumers of the same source,
+ * like a consumer recreated on the same queue, all write the lag the gauge reads.
+ * The callers take the start time with {@link System#nanoTime()}, so recording a delivery allocates nothing.
+ */
+public final class ConsumerMetrics {
+
+    // the lag of each source, held for the lifetime of the application as its gauge is registered once
+    private static final ConcurrentMap<Tags, AtomicLong> LAGS = new ConcurrentHashMap<>();
+
+    private final Tags tags;
+    private final Timer handleTimer;
+    private final Counter received;
+    private final Counter failed;
+    private final DistributionSummary batchSize;
+    private volatile AtomicLong lag = new AtomicLong();
+
+    /**
+     * Returns the {@link ConsumerMetrics} of the consumers of the given transport and event.
+     *
+     * @param transport the transport, like 'kafka' or 'sqs'
+     * @param eventName the event name
+     * @return the ConsumerMetrics
+     */
+    public static ConsumerMetrics of(String transport, String eventName) {
+        return new ConsumerMetrics(Tags.of(NotificationMetrics.TRANSPORT_TAG, transport,
+                NotificationMetrics.EVENT_TAG, eventName != null ? eventName : "unknown"));
+    }
+
+    private ConsumerMetrics(Tags tags) {
+        this.tags = tags;
+        this.handleTimer = NotificationMetrics.histogramTimer("notifications.consumer.handle",
+                "Time the callback took to handle a message", tags);
+        this.received = Counter.builder("notifications.consumer.received")
+                .description("Messages received")
+                .tags(tags)
+                .register(NotificationMetrics.getRegistry());
+        this.failed = Counter.builder("notifications.consumer.failed")
+                .description("Messages whose callback failed")
+                .tags(tags)
+                .register(NotificationMetrics.getRegistry());
+        this.batchSize = NotificationMetrics.batchSize("notifications.consumer.batch.size",
+                "Messages received by a single poll", tags);
+    }
+
+    /**
+     * Records a message handled by the callback.
+     *
+     * @param startNanos the {@link System#nanoTime()} the callback was invoked at
+     */
+    public void handled(long startNanos) {
+        this.handleTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        this.received.increment();
+    }
+
+    /**
+     * Records a message whose callback failed.
+     *
+     * @param startNanos the {@link System#nanoTime()} the callback was invoked at
+     */
+    public void failed(long startNanos) {
+        this.handleTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        this.received.increment();
+        this.failed.increment();
+    }
+
+    /**
+     * Records the number of messages received by a single poll, empty polls excluded.
+     *
+     * @param size the number of messages received
+     */
+    public void batch(int size) {
+        if (size > 0) {
+            this.batchSize.record(size);
+        }
+    }
+
+    /**
+     * Publishes the lag of the consumer as the 'notifications.consumer.lag' gauge, tagged with the given source.
+     * The gauge reads zero until the first {@link #lag(long)}.
+     *
+     * @param source the queue, or the consumer, the lag is measured on
+     * @return this ConsumerMetrics
+     */
+    public ConsumerMetrics trackLag(String source) {
+        this.lag = LAGS.computeIfAbsent(this.tags.and("source", source != null ? source : "unknown"), tags -> {
+            AtomicLong lag = new AtomicLong();
+            Gauge.builder("notifications.consumer.lag", lag, AtomicLong::get)
+                    .description("Messages waiting to be consumed")
+                    .baseUnit("messages")
+                    .tags(tags)
+                    .strongReference(true)
+                    .register(NotificationMetrics.getRegistry());
+            return lag;
+        });
+        return this;
+    }
+
+    /**
+     * Sets the lag of the consumer, the number of messages waiting to be consumed.
+     *
+     * @param lag the lag
+     */
+    public void lag(long lag) {
+        this.lag.set(lag);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.notificationdemo.notifications.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+import java.time.Duration;
+
+/**
+ * NotificationMetrics holds the registry the producers and consumers record their metrics to.
+ * It is a single {@link PrometheusMeterRegistry}, created with the first producer or consumer, even before the Spring context,
+ * and then exposed to Spring Boot Actuator as its own registry, so it is scraped on '/actuator/prometheus'.
+ * The producers and consumers look their meters up once, when they are created: recording a send or a delivery
+ * only updates counters and histogram buckets, with no lookup and no allocation on the hot path.
+ */
+public final class NotificationMetrics {
+
+    /** the tag naming the broker, or channel, of the producer or consumer */
+    public static final String TRANSPORT_TAG = "transport";
+    /** the tag naming the event of the producer or consumer */
+    public static final String EVENT_TAG = "event";
+
+    private static final PrometheusMeterRegistry REGISTRY = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    private NotificationMetrics() {
+    }
+
+    /**
+     * Returns the registry the producers and consumers record their metrics to.
+     *
+     * @return the shared registry
+     */
+    public static PrometheusMeterRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Returns the timer of the serialization, and compression, of the payloads of the given content type and encoding.
+     *
+     * @param contentType the content type of the serializer
+     * @param contentEncoding the encoding of the compressor, null if the payloads are not compressed
+     * @return the serialization timer
+     */
+    public static Timer serializationTimer(String contentType, String contentEncoding) {
+        return Timer.builder("notifications.serialization")
+                .description("Time spent serializing and compressing the payloads")
+                .tags(payloadTags(contentType, contentEncoding))
+                .publishPercentileHistogram()
+                // the payloads are serialized in microseconds
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(REGISTRY);
+    }
+
+    /**
+     * Returns the distribution of the size of the payloads of the given content type and encoding, once encoded.
+     *
+     * @param contentType the content type of the serializer
+     * @param contentEncoding the encoding of the compressor, null if the payloads are not compressed
+     * @return the payload size summary
+     */
+    public static DistributionSummary payloadSize(String contentType, String contentEncoding) {
+        return DistributionSummary.builder("notifications.payload.size")
+                .description("Size of the encoded payloads")
+                .baseUnit("bytes")
+                .tags(payloadTags(contentType, contentEncoding))
+                .register(REGISTRY);
+    }
+
+    private static Tags payloadTags(String contentType, String contentEncoding) {
+        return Tags.of("content.type", contentType, "content.encoding", contentEncoding != null ? contentEncoding : "identity");
+    }
+
+    /**
+     * Returns a timer with a percentile histogram, so the latency percentiles can be aggregated across instances.
+     *
+     * @param name the timer name
+     * @param description the timer description
+     * @param tags the timer tags
+     * @return the timer
+     */
+    static Timer histogramTimer(String name, String description, Tags tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(REGISTRY);
+    }
+
+    /**
+     * Returns a summary of the number of messages of the batches.
+     *
+     * @param name the summary name
+     * @param description the summary description
+     * @param tags the summary tags
+     * @return the batch size summary
+     */
+    static DistributionSummary batchSize(String name, String description, Tags tags) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("messages")
+                .tags(tags)
+                .register(REGISTRY);
+    }
+}
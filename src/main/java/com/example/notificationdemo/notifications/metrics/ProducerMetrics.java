@@ -0,0 +1,93 @@
+package com.example.notificationdemo.notifications.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProducerMetrics records the sends of a producer, tagged with its transport and event name:
+ * the time each message takes to be handed to (or acknowledged by) the broker, the messages sent and failed,
+ * and the size of the batches.
+ * The meters are looked up once, so the producers sharing the transport and the event name share them too.
+ * The callers take the start time with {@link System#nanoTime()}, so recording a send allocates nothing.
+ */
+public final class ProducerMetrics {
+
+    private final Timer sendTimer;
+    private final Counter sent;
+    private final Counter failed;
+    private final DistributionSummary batchSize;
+
+    /**
+     * Returns the {@link ProducerMetrics} of the producers of the given transport and event.
+     *
+     * @param transport the transport, like 'kafka' or 'sns'
+     * @param eventName the event name
+     * @return the ProducerMetrics
+     */
+    public static ProducerMetrics of(String transport, String eventName) {
+        return new ProducerMetrics(Tags.of(NotificationMetrics.TRANSPORT_TAG, transport,
+                NotificationMetrics.EVENT_TAG, eventName != null ? eventName : "unknown"));
+    }
+
+    private ProducerMetrics(Tags tags) {
+        this.sendTimer = NotificationMetrics.histogramTimer("notifications.producer.send",
+                "Time to send a message, or a batch, until the broker received it", tags);
+        this.sent = Counter.builder("notifications.producer.sent")
+                .description("Messages sent")
+                .tags(tags)
+                .register(NotificationMetrics.getRegistry());
+        this.failed = Counter.builder("notifications.producer.failed")
+                .description("Messages whose send failed")
+                .tags(tags)
+                .register(NotificationMetrics.getRegistry());
+        this.batchSize = NotificationMetrics.batchSize("notifications.producer.batch.size",
+                "Messages sent by a single batch send", tags);
+    }
+
+    /**
+     * Records a message sent.
+     *
+     * @param startNanos the {@link System#nanoTime()} the send started at
+     */
+    public void sent(long startNanos) {
+        this.sendTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        this.sent.increment();
+    }
+
+    /**
+     * Records a message whose send failed.
+     */
+    public void failed() {
+        this.failed.increment();
+    }
+
+    /**
+     * Records a batch of messages sent at once.
+     *
+     * @param startNanos the {@link System#nanoTime()} the send started at
+     * @param size the number of messages of the batch
+     * @param failures the number of messages of the batch the broker rejected
+     */
+    public void sentBatch(long startNanos, int size, int failures) {
+        this.sendTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        this.sent.increment(size - failures);
+        if (failures > 0) {
+            this.failed.increment(failures);
+        }
+        this.batchSize.record(size);
+    }
+
+    /**
+     * Records a batch of messages whose send failed.
+     *
+     * @param size the number of messages of the batch
+     */
+    public void failedBatch(int size) {
+        this.failed.increment(size);
+        this.batchSize.record(size);
+    }
+}
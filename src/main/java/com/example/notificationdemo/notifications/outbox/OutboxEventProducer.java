@@ -0,0 +1,154 @@
+package com.example.notificationdemo.notifications.outbox;
+
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.serialization.PayloadCodec;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.utils.JobRuntime;
+import com.example.notificationdemo.utils.Properties;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * OutboxEventProducer puts a durable local outbox in front of any {@link EventProducer}.
+ * The notifications are appended to an {@link OutboxLog} kept in the 'outbox.dir' directory,
+ * and an {@link OutboxRelay} issues them to the wrapped producer in the background.
+ * So issuing a notification costs a copy into memory-mapped file, it doesn't wait for the broker,
+ * and the notifications issued while the broker is unavailable are relayed once it is back, even after a restart.
+ * When 'outbox.fsync.wait' is 'true' the issue also waits for the group fsync of the log,
+ * which protects the notifications from a crash of the machine and not only of the process.
+ * The bodies are stored as JSON whatever the codec of the wrapped producer, which serializes them again when relaying.
+ *
+ * @param <T> the type of the object it must be notified as body of the message.
+ */
+public final class OutboxEventProducer<T> implements EventProducer<T>, AutoCloseable {
+
+    private static final PayloadCodec CODEC = PayloadCodecs.JSON;
+
+    private final String name;
+    private final OutboxLog log;
+    private final OutboxRelay<T> relay;
+    private final boolean fsyncWait;
+
+    /**
+     * Basic constructor for {@link OutboxEventProducer}, configured through the 'outbox.*' properties.
+     * The outbox files are kept in the 'outbox.dir'/'name' directory and the relay is started right away.
+     *
+     * @param name the outbox name, which must be unique among the outboxes of the application
+     * @param producer the producer the notifications are relayed to
+     * @param type the type of the notifications body
+     * @throws NotificationException if the outbox can't be opened
+     */
+    public OutboxEventProducer(String name, EventProducer<T> producer, Class<T> type) throws NotificationException {
+        this(name, producer, type,
+                new OutboxLog(
+                        Paths.get(Properties.get("outbox.dir")).resolve(name),
+                        Integer.parseInt(Properties.get("outbox.segment_size")),
+                        Long.parseLong(Properties.get("outbox.fsync.interval"))),
+                Boolean.parseBoolean(Properties.get("outbox.fsync.wait")),
+                Integer.parseInt(Properties.get("outbox.relay.batch_size")));
+    }
+
+    /**
+     * Constructor for {@link OutboxEventProducer}.
+     * The relay is started right away.
+     *
+     * @param name the outbox name
+     * @param producer the producer the notifications are relayed to
+     * @param type the type of the notifications body
+     * @param log the log the notifications are appended to
+     * @param fsyncWait whether issuing a notification waits for it to be forced to disk
+     * @param batchSize the maximum number of notifications relayed at once
+     */
+    public OutboxEventProducer(String name, EventProducer<T> producer, Class<T> type, OutboxLog log, boolean fsyncWait, int batchSize) {
+        this.name = name;
+        this.log = log;
+        this.fsyncWait = fsyncWait;
+        this.relay = new OutboxRelay<>(log, producer, CODEC, type, batchSize);
+        this.relay.startDraining();
+        JobRuntime.getInstance().registerProducer(this);
+    }
+
+    /**
+     * Returns the outbox name.
+     *
+     * @return the outbox name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Appends the given object to the outbox, to be relayed to the broker in the background.
+     *
+     * @param body the object to be sent as payload
+     * @throws NotificationException if the object can't be serialized or appended
+     */
+    @Override
+    public void issue(T body) throws NotificationException {
+        append(body);
+    }
+
+    /**
+     * Appends the given object to the outbox, to be relayed to the broker in the background.
+     * The returned future is already completed: the acknowledgement is the one of the outbox, not of the broker.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed with the position of the notification in the outbox
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
+        try {
+            return CompletableFuture.completedFuture(new Ack(name, append(body).toString()));
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Appends the given objects to the outbox, waiting at most once for the fsync.
+     *
+     * @param bodies the objects to be sent as payloads
+     * @throws NotificationException if an object can't be serialized or appended
+     */
+    @Override
+    public void issueAll(Collection<T> bodies) throws NotificationException {
+        if (bodies == null) throw new NotificationException("Bodies are null");
+        OutboxLog.Position last = null;
+        for (T body : bodies) {
+            if (body == null) throw new NotificationException("Body is null");
+            last = log.append(CODEC.serialize(body));
+        }
+        if (fsyncWait && last != null) log.awaitFlushed(last);
+    }
+
+    /**
+     * Returns whether all the notifications appended so far have been relayed to the broker.
+     *
+     * @return true if the outbox is empty
+     */
+    public boolean isDrained() {
+        return log.isEmpty();
+    }
+
+    /**
+     * Stops the relay and closes the outbox.
+     * The notifications not yet relayed are kept on disk and relayed by the next outbox opened with the same name.
+     */
+    @Override
+    public void close() {
+        JobRuntime.getInstance().unregister(this);
+        relay.stop();
+        log.close();
+    }
+
+    private OutboxLog.Position append(T body) throws NotificationException {
+        if (body == null) throw new NotificationException("Body is null");
+        OutboxLog.Position position = log.append(CODEC.serialize(body));
+        if (fsyncWait) log.awaitFlushed(position);
+        return position;
+    }
+}
@@ -0,0 +1,473 @@
+package com.example.notificationdemo.notifications.outbox;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.utils.SharedExecutors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * OutboxLog is an append only log of records persisted in a directory as a sequence of memory-mapped segment files.
+ * Appending a record is a copy into the mapped memory, so it costs no system call: the record is in the page cache
+ * as soon as the append returns and it survives the crash of the process.
+ * A background thread forces the written segments to disk every 'outbox.fsync.interval' milliseconds,
+ * or as soon as a writer waits for its records to be on disk, so that all the writers of the interval share one fsync.
+ * The records are read back from the checkpoint, the position up to which they have been consumed:
+ * the segments entirely behind the checkpoint are deleted.
+ * The appends only lock the head of the log, while the commits persist the checkpoint under a lock of their own.
+ *
+ * Each record is stored as its length, the CRC32 of its bytes and its bytes,
+ * so that a record torn by a crash is detected and discarded when the log is opened again.
+ */
+public class OutboxLog implements Closeable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "lock";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long fsyncInterval;
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Thread flusher;
+    private final Object flushLock = new Object();
+    // serializes the commits, so persisting the checkpoint never holds back the writers
+    private final Object checkpointLock = new Object();
+
+    // guarded by this
+    private Segment head;
+    private int writeOffset;
+    // guarded by flushLock
+    private Position flushed;
+    private boolean flushRequested;
+
+    private volatile Position written;
+    private volatile Position checkpoint;
+    private volatile boolean closed;
+
+    /**
+     * Opens the log stored in the given directory, creating it if needed.
+     * The records written before a restart and not yet consumed are available again from the checkpoint.
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentSize the size in bytes of the new segment files, which bounds the size of a record
+     * @param fsyncInterval the maximum time in milliseconds the written records wait to be forced to disk
+     * @throws NotificationException if the log can't be opened or it is already open by another process
+     */
+    public OutboxLog(Path directory, int segmentSize, long fsyncInterval) throws NotificationException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncInterval = fsyncInterval;
+        try {
+            Files.createDirectories(directory);
+            this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                throw new NotificationException("Outbox " + directory + " is already in use");
+            }
+            recover();
+        } catch (IOException e) {
+            throw new NotificationException("Unable to open the outbox " + directory + ": " + e.getMessage());
+        }
+        this.flusher = SharedExecutors.daemonThreadFactory("outbox-fsync").newThread(this::flushLoop);
+        this.flusher.start();
+    }
+
+    /**
+     * Appends a record to the log.
+     * The record is readable as soon as the method returns, while it is forced to disk within the fsync interval.
+     *
+     * @param record the record bytes
+     * @return the position right after the record
+     * @throws NotificationException if the log is closed, the record doesn't fit in a segment or a new segment can't be created
+     */
+    public synchronized Position append(byte[] record) throws NotificationException {
+        if (closed) throw new NotificationException("Outbox " + directory + " is closed");
+        int size = HEADER_SIZE + record.length;
+        if (size > segmentSize) {
+            throw new NotificationException(String.format("Record of %d bytes exceeds the outbox segment size of %d bytes", record.length, segmentSize));
+        }
+        if (writeOffset + size > head.size()) {
+            head = createSegment(head.id + 1);
+            writeOffset = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = head.buffer.duplicate();
+        buffer.position(writeOffset + HEADER_SIZE);
+        buffer.put(record);
+        buffer.putInt(writeOffset + 4, (int) crc.getValue());
+        // the length is written last, a zero length marking the end of the written records
+        buffer.putInt(writeOffset, record.length);
+        writeOffset += size;
+        Position position = new Position(head.id, writeOffset);
+        this.written = position;
+        return position;
+    }
+
+    /**
+     * Waits until the records up to the given position are forced to disk, sharing the fsync with the other writers.
+     *
+     * @param position the position returned by {@link #append(byte[])}
+     * @throws NotificationException if the log is closed or the thread is interrupted while waiting
+     */
+    public void awaitFlushed(Position position) throws NotificationException {
+        synchronized (flushLock) {
+            while (flushed.compareTo(position) < 0) {
+                if (closed) throw new NotificationException("Outbox " + directory + " is closed");
+                flushRequested = true;
+                flushLock.notifyAll();
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NotificationException("Interrupted while waiting for the outbox fsync");
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the records following the given position, up to the last appended one.
+     *
+     * @param from the position to read from, typically the checkpoint or the end of the last record read
+     * @param maxRecords the maximum number of records to read
+     * @return the records read, empty if there is none after the given position
+     */
+    public List<Record> read(Position from, int maxRecords) {
+        List<Record> records = new ArrayList<>();
+        Position end = this.written;
+        long segmentId = from.segmentId;
+        int offset = from.offset;
+        while (records.size() < maxRecords && new Position(segmentId, offset).compareTo(end) < 0) {
+            Segment segment = segments.get(segmentId);
+            if (segment == null) break;
+            int length = offset + HEADER_SIZE <= segment.size() ? segment.buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                // the rest of the segment is unused, the records continue in the next one
+                segmentId++;
+                offset = 0;
+                continue;
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset + HEADER_SIZE);
+            buffer.get(bytes);
+            offset += HEADER_SIZE + length;
+            records.add(new Record(bytes, new Position(segmentId, offset)));
+        }
+        return records;
+    }
+
+    /**
+     * Moves the checkpoint to the given position, persisting it, and deletes the segments left behind.
+     *
+     * @param position the position up to which the records have been consumed
+     * @throws NotificationException if the checkpoint can't be persisted
+     */
+    public void commit(Position position) throws NotificationException {
+        synchronized (checkpointLock) {
+            if (closed) throw new NotificationException("Outbox " + directory + " is closed");
+            if (position.compareTo(checkpoint) <= 0) return;
+            persistCheckpoint(position);
+            this.checkpoint = position;
+            // the head segment, the only one the writers touch, is never behind the checkpoint
+            for (Segment segment : new ArrayList<>(segments.headMap(position.segmentId).values())) {
+                segments.remove(segment.id);
+                segment.delete();
+            }
+        }
+    }
+
+    private void persistCheckpoint(Position position) throws NotificationException {
+        ByteBuffer content = ByteBuffer.allocate(12).putLong(position.segmentId).putInt(position.offset);
+        content.flip();
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(content);
+                channel.force(true);
+            }
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new NotificationException("Unable to persist the outbox checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the position up to which the records have been consumed.
+     *
+     * @return the checkpoint
+     */
+    public Position getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Returns whether all the appended records have been consumed.
+     *
+     * @return true if there is no record after the checkpoint
+     */
+    public boolean isEmpty() {
+        return read(checkpoint, 1).isEmpty();
+    }
+
+    /**
+     * Forces the written records to disk and closes the log.
+     * The segment files stay on disk, to be read again when the log is reopened.
+     */
+    @Override
+    public void close() {
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+            }
+        }
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                synchronized (flushLock) {
+                    if (!flushRequested) flushLock.wait(fsyncInterval);
+                    flushRequested = false;
+                }
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void flush() {
+        Position target = this.written;
+        synchronized (flushLock) {
+            if (target.compareTo(flushed) <= 0) return;
+            // the writers arriving meanwhile wait for the next fsync, which groups all of them
+            for (Segment segment : segments.subMap(flushed.segmentId, true, target.segmentId, true).values()) {
+                segment.buffer.force();
+            }
+            flushed = target;
+            flushLock.notifyAll();
+        }
+    }
+
+    private void recover() throws IOException, NotificationException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(SEGMENT_SUFFIX)) {
+                    long id = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, openSegment(id, file, (int) Files.size(file)));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            createSegment(0);
+        }
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        Position start = new Position(first.getKey(), 0);
+        Position saved = readCheckpoint();
+        this.checkpoint = saved != null && saved.compareTo(start) > 0 ? saved : start;
+
+        // the records of the last segment are scanned up to the first missing or torn one,
+        // whose leftovers are wiped so that they are not mistaken for records once overwritten
+        this.head = segments.lastEntry().getValue();
+        this.writeOffset = scan(head);
+        ByteBuffer buffer = head.buffer.duplicate();
+        buffer.position(writeOffset);
+        byte[] zeros = new byte[8192];
+        while (buffer.hasRemaining()) {
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+        }
+        this.written = new Position(head.id, writeOffset);
+        this.flushed = this.written;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) return null;
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (content.remaining() < 12) return null;
+        return new Position(content.getLong(), content.getInt());
+    }
+
+    private static int scan(Segment segment) {
+        int offset = 0;
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_SIZE <= segment.size()) {
+            int length = segment.buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segment.size()) break;
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset + HEADER_SIZE);
+            buffer.get(bytes);
+            crc.reset();
+            crc.update(bytes);
+            if ((int) crc.getValue() != segment.buffer.getInt(offset + 4)) break;
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private Segment createSegment(long id) throws NotificationException {
+        try {
+            Segment segment = openSegment(id, directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX)), segmentSize);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new NotificationException("Unable to create an outbox segment: " + e.getMessage());
+        }
+    }
+
+    private static Segment openSegment(long id, Path file, int size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    /**
+     * Position is a point of the log: the segment and the offset inside it.
+     */
+    public static final class Position implements Comparable<Position> {
+
+        private final long segmentId;
+        private final int offset;
+
+        public Position(long segmentId, int offset) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+        }
+
+        public long getSegmentId() {
+            return segmentId;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int result = Long.compare(segmentId, other.segmentId);
+            return result != 0 ? result : Integer.compare(offset, other.offset);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Position)) return false;
+            Position position = (Position) o;
+            return segmentId == position.segmentId && offset == position.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(segmentId) * 31 + offset;
+        }
+
+        @Override
+        public String toString() {
+            return segmentId + ":" + offset;
+        }
+    }
+
+    /**
+     * Record is a record read from the log, along with the position right after it.
+     */
+    public static final class Record {
+
+        private final byte[] bytes;
+        private final Position next;
+
+        Record(byte[] bytes, Position next) {
+            this.bytes = bytes;
+            this.next = next;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public Position getNext() {
+            return next;
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        int size() {
+            return buffer.capacity();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                // the mapping is released by the garbage collector, the file is removed right away
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Unable to delete the outbox segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.notificationdemo.notifications.outbox;
+
+import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.serialization.PayloadCodec;
+import com.example.notificationdemo.utils.ContinuousJob;
+import com.example.notificationdemo.utils.JobRuntime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OutboxRelay drains an {@link OutboxLog} to the broker through the given {@link EventProducer}, in batches.
+ * It runs in drain mode: it relays batch after batch as long as it finds records and it backs off while the log is empty.
+ * The checkpoint is moved forward only once the whole batch has been accepted by the producer,
+ * so while the broker is unavailable the records stay in the log and the same batch is retried after the backoff.
+ * A record is delivered at least once: the records of a batch accepted right before a crash are relayed again.
+ *
+ * @param <T> the type of the object it must be notified as body of the message.
+ */
+public class OutboxRelay<T> extends ContinuousJob {
+
+    private final OutboxLog log;
+    private final EventProducer<T> producer;
+    private final PayloadCodec codec;
+    private final Class<T> type;
+    private final int batchSize;
+    private OutboxLog.Position next;
+
+    /**
+     * Basic constructor for {@link OutboxRelay}.
+     *
+     * @param log the log to be drained
+     * @param producer the producer issuing the records to the broker
+     * @param codec the codec the records have been serialized with
+     * @param type the type of the records body
+     * @param batchSize the maximum number of records issued at once
+     */
+    public OutboxRelay(OutboxLog log, EventProducer<T> producer, PayloadCodec codec, Class<T> type, int batchSize) {
+        this.log = log;
+        this.producer = producer;
+        this.codec = codec;
+        this.type = type;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Stops the relay, waiting up to 'jobs.shutdown.timeout' for the batch being relayed, if any, to complete.
+     * A batch still being relayed past the timeout is not committed, so it is relayed again after a restart.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        try {
+            if (!awaitTermination(JobRuntime.getInstance().getShutdownTimeout())) {
+                System.err.println("Outbox relay stopped with a batch still being relayed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void doWork() {
+        drain();
+    }
+
+    @Override
+    public synchronized int drain() {
+        if (next == null) next = log.getCheckpoint();
+        List<OutboxLog.Record> records = log.read(next, batchSize);
+        if (records.isEmpty()) return 0;
+
+        List<T> bodies = new ArrayList<>(records.size());
+        for (OutboxLog.Record record : records) {
+            try {
+                bodies.add(codec.deserialize(record.getBytes(), type));
+            } catch (NotificationException e) {
+                // a record which can't be read would block the relay forever: it is discarded
+                System.err.println("Discarding unreadable outbox record before " + record.getNext() + ": " + e.getMessage());
+            }
+        }
+        try {
+            if (!bodies.isEmpty()) producer.issueAll(bodies);
+        } catch (NotificationException e) {
+            System.err.println("Outbox relay failed, retrying later: " + e.getMessage());
+            return 0;
+        }
+        OutboxLog.Position end = records.get(records.size() - 1).getNext();
+        try {
+            log.commit(end);
+        } catch (NotificationException e) {
+            // the batch has been issued anyway: it would be issued again only after a restart
+            e.printStackTrace();
+        }
+        next = end;
+        return records.size();
+    }
+}
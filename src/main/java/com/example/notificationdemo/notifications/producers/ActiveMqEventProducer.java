@@ -1,33 +1,51 @@
 package com.example.notificationdemo.notifications.producers;
 
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.EncodedPayloadProducer;
 import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.InFlightWindow;
 import com.example.notificationdemo.notifications.NotificationException;
-import com.example.notificationdemo.utils.Properties;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.activemq.ActiveMQConnectionFactory;
+import com.example.notificationdemo.notifications.connections.ActiveMqConnectionManager;
+import com.example.notificationdemo.notifications.connections.ActiveMqDestinations;
+import com.example.notificationdemo.notifications.metrics.ProducerMetrics;
+import com.example.notificationdemo.notifications.serialization.EncodedPayload;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressor;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressors;
+import com.example.notificationdemo.notifications.serialization.PayloadEncoder;
+import com.example.notificationdemo.notifications.serialization.PayloadSerializer;
+import com.example.notificationdemo.utils.JobRuntime;
+import org.apache.activemq.command.ActiveMQTopic;
 
 import javax.jms.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * ActiveMqChannel class implements a {@link EventProducer} by publishing a message
  * on a ActiveMQ topic.
  * It automatically creates a topic (if it doesn't exist yet)
  * and publish the notification.
+ * The notifications are sent as {@link BytesMessage}s holding the serialized payload,
+ * whose content type is carried by the 'contentType' message property
+ * and, when compressed, whose encoding is carried by the 'contentEncoding' message property.
+ * The producers share the connections of the {@link ActiveMqConnectionManager} and borrow a pooled session
+ * for each send, so concurrent calls publish in parallel on different sessions.
+ * With 'activemq.virtual_topics' the topic is a virtual topic, see {@link ActiveMqDestinations}.
  *
  * @param <T> the body of the message passed as a JSON String
  */
-public class ActiveMqEventProducer<T> implements EventProducer<T> {
+public class ActiveMqEventProducer<T> implements EncodedPayloadProducer<T> {
 
     private final String eventName;
     private String topicName;
-    private Connection connection;
-    private Session session;
+    private final ActiveMqConnectionManager connectionManager;
     private Topic topic;
-    private MessageProducer producer;
-    private ObjectMapper mapper = new ObjectMapper();
-
-    private static int clientIdIndex = 0;
+    private PayloadEncoder encoder = PayloadEncoder.fromProperties();
+    private InFlightWindow window = InFlightWindow.fromProperties();
+    private final ProducerMetrics metrics;
 
     /**
      * Basic constructor for {@link ActiveMqEventProducer}
@@ -51,30 +69,34 @@ public class ActiveMqEventProducer<T> implements EventProducer<T> {
      * @throws JMSException
      */
     public ActiveMqEventProducer(String eventName, String topicName) throws JMSException {
-        this.eventName = eventName;
-        this.connection = connection(eventName);
-        this.session = session(this.connection);
-        this.topicName = topicName;
-        this.topic = this.session.createTopic(this.topicName);
-        this.producer = session.createProducer(topic);
+        this(eventName, topicName, ActiveMqConnectionManager.getInstance());
     }
 
     /**
-     * Closes the JMS Session.
+     * Constructor for {@link ActiveMqEventProducer}
+     * It publishes on the ActiveMQ topic with the specified topic name through the given connection manager.
      *
+     * @param eventName the event name
+     * @param topicName the ActiveMQ topic name
+     * @param connectionManager the manager of the shared connections and pooled sessions
      * @throws JMSException
      */
-    public void closeSession() throws JMSException {
-       this.connection.close();
+    public ActiveMqEventProducer(String eventName, String topicName, ActiveMqConnectionManager connectionManager) throws JMSException {
+        this.eventName = eventName;
+        this.connectionManager = connectionManager;
+        this.topicName = ActiveMqDestinations.topicName(topicName);
+        // ActiveMQ creates the topic at the first message sent to it
+        this.topic = new ActiveMQTopic(this.topicName);
+        this.metrics = ProducerMetrics.of("activemq", eventName);
     }
 
     /**
-     * Closes the JMS Connection.
-     *
-     * @throws JMSException
+     * Waits for the pending asynchronous sends.
+     * The sessions and the connections belong to the {@link ActiveMqConnectionManager}, which is closed on its own.
      */
-    public void closeConnection() throws JMSException {
-        this.connection.close();
+    @Override
+    public void close() {
+        this.window.awaitEmpty(JobRuntime.getInstance().getShutdownTimeout());
     }
 
     /**
@@ -87,21 +109,12 @@ public class ActiveMqEventProducer<T> implements EventProducer<T> {
     }
 
     /**
-     * Returns the connection.
-     *
-     * @return the connection
-     */
-    public Connection getConnection() {
-        return connection;
-    }
-
-    /**
-     * Returns the ActiveMQ session.
+     * Returns the manager of the connections the producer publishes on.
      *
-     * @return the ActiveMQ session
+     * @return the connection manager
      */
-    public Session getSession() {
-        return session;
+    public ActiveMqConnectionManager getConnectionManager() {
+        return connectionManager;
     }
 
     /**
@@ -124,7 +137,7 @@ public class ActiveMqEventProducer<T> implements EventProducer<T> {
     }
 
     /**
-     * Emits the notification in JSON String format.
+     * Emits the notification as a JSON {@link BytesMessage} on a pooled session.
      *
      * @param body the object to be sent as payload
      * @throws NotificationException
@@ -132,31 +145,143 @@ public class ActiveMqEventProducer<T> implements EventProducer<T> {
     @Override
     public void issue(T body) throws NotificationException {
         if (body == null) throw new NotificationException("Body is null");
-        if (this.session == null)  throw new NotificationException("ActiveMQ session is null");
-        if (this.producer == null)  throw new NotificationException("ActiveMQ producer exchange is null");
+        send(encoder.encode(body));
+    }
 
+    private void send(EncodedPayload payload) throws NotificationException {
+        long start = System.nanoTime();
         try {
-            mapper.writeValueAsString(body);
-            TextMessage message = session.createTextMessage(mapper.writeValueAsString(body));
-            this.producer.send(message);
-        } catch (JsonProcessingException | JMSException e) {
+            this.connectionManager.getSessionPool().withSession(pooled -> {
+                pooled.getProducer().send(this.topic, message(pooled.getSession(), payload));
+                return null;
+            });
+            this.metrics.sent(start);
+        } catch (JMSException e) {
+            this.metrics.failed();
             throw new NotificationException(e.getMessage());
         }
     }
 
-    private Connection connection(String id) throws JMSException {
-        clientIdIndex++;
-        String clientId = id+"-producer"+clientIdIndex+"";
+    /**
+     * Emits the notification as a JSON {@link BytesMessage} from the shared I/O executor,
+     * so the calling thread is not blocked.
+     * With asynchronous sends there is no broker round trip to wait for, so the message is sent right away.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed once the broker received the message, or once it has been sent with asynchronous sends
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
+        if (this.connectionManager.isAsyncSend()) {
+            try {
+                issue(body);
+                return CompletableFuture.completedFuture(new Ack(this.topicName, null));
+            } catch (NotificationException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return window.execute(() -> {
+            issue(body);
+            return new Ack(this.topicName, null);
+        });
+    }
 
-        Connection connection = new ActiveMQConnectionFactory(Properties.get("activemq.host"))
-                .createConnection(Properties.get("activemq.username"), Properties.get("activemq.password"));
-        connection.setClientID(clientId);
-        connection.start();
-        return connection;
+    /**
+     * Emits the already encoded notification from the shared I/O executor,
+     * so the calling thread is not blocked.
+     *
+     * @param body the object the payload was encoded from
+     * @param payload the encoded payload
+     * @return the future completed once the broker received the message
+     */
+    @Override
+    public CompletableFuture<Ack> issueEncodedAsync(T body, EncodedPayload payload) {
+        if (this.connectionManager.isAsyncSend()) {
+            try {
+                send(payload);
+                return CompletableFuture.completedFuture(new Ack(this.topicName, null));
+            } catch (NotificationException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return window.execute(() -> {
+            send(payload);
+            return new Ack(this.topicName, null);
+        });
     }
 
-    private Session session(final Connection connection) throws JMSException {
-        return connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    /**
+     * Returns the encoder the producer runs the bodies through.
+     *
+     * @return the payload encoder
+     */
+    @Override
+    public PayloadEncoder getEncoder() {
+        return this.encoder;
+    }
+
+    /**
+     * Emits the notifications as JSON {@link BytesMessage}s within a single JMS transaction, on a pooled transacted session:
+     * the whole batch is committed to the broker at once.
+     *
+     * @param bodies the objects to be sent as payloads
+     * @throws NotificationException
+     */
+    @Override
+    public void issueAll(Collection<T> bodies) throws NotificationException {
+        if (bodies == null) throw new NotificationException("Bodies are null");
+        List<EncodedPayload> payloads = new ArrayList<>(bodies.size());
+        for (T body : bodies) {
+            payloads.add(encoder.encode(body));
+        }
+        long start = System.nanoTime();
+        try {
+            this.connectionManager.getTransactedPool().withSession(pooled -> {
+                try {
+                    for (EncodedPayload payload : payloads) {
+                        pooled.getProducer().send(this.topic, message(pooled.getSession(), payload));
+                    }
+                    pooled.getSession().commit();
+                } catch (JMSException | RuntimeException e) {
+                    pooled.getSession().rollback();
+                    throw e;
+                }
+                return null;
+            });
+            this.metrics.sentBatch(start, payloads.size(), 0);
+        } catch (JMSException e) {
+            this.metrics.failedBatch(payloads.size());
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the {@link PayloadSerializer} turning the bodies into the message payloads.
+     *
+     * @param serializer the payload serializer
+     */
+    public void setSerializer(PayloadSerializer serializer) {
+        this.encoder = this.encoder.withSerializer(serializer);
+    }
+
+    /**
+     * Sets the {@link PayloadCompressor} compressing the message payloads from the given size.
+     *
+     * @param compressor the payload compressor, null not to compress
+     * @param threshold the payload size, in bytes, from which the payloads are compressed
+     */
+    public void setCompressor(PayloadCompressor compressor, int threshold) {
+        this.encoder = this.encoder.withCompressor(compressor, threshold);
+    }
+
+    private BytesMessage message(Session session, EncodedPayload payload) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(payload.getBytes());
+        message.setStringProperty(PayloadCodecs.CONTENT_TYPE_PROPERTY, payload.getContentType());
+        if (payload.isCompressed()) {
+            message.setStringProperty(PayloadCompressors.CONTENT_ENCODING_PROPERTY, payload.getContentEncoding());
+        }
+        return message;
     }
 
 }
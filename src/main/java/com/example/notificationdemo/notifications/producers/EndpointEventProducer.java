@@ -1,39 +1,132 @@
 package com.example.notificationdemo.notifications.producers;
 
+import com.example.notificationdemo.notifications.Ack;
 import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.InFlightWindow;
 import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.HttpEndpointClient;
+import com.example.notificationdemo.notifications.metrics.ProducerMetrics;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadSerializer;
+import com.example.notificationdemo.utils.JobRuntime;
 import org.apache.http.Header;
 import org.springframework.http.HttpMethod;
-import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * EndpointChannel class implements a {@link EventProducer} through an HTTP/S call to an Endpoint.
+ * The calls go through the shared {@link HttpEndpointClient}, so the connections are kept alive and reused.
+ * Its metrics are tagged with the endpoint host as event name, so the callback URLs, and any token they carry, are not exposed.
  *
  * @param <T> the body of the message to be sent over HTTP/S.
  */
 public class EndpointEventProducer<T> implements EventProducer<T> {
 
     private Endpoint endpoint;
+    private HttpEndpointClient httpClient = HttpEndpointClient.getInstance();
+    private PayloadSerializer serializer = PayloadCodecs.getDefault();
+    private InFlightWindow window = InFlightWindow.fromProperties();
+    private final ProducerMetrics metrics;
 
     public EndpointEventProducer(final Endpoint endpoint) {
         this.endpoint = endpoint;
+        this.metrics = ProducerMetrics.of("endpoint", endpoint != null ? endpoint.getHost() : null);
+    }
+
+    /**
+     * Waits for the pending asynchronous calls. The connections belong to the shared {@link HttpEndpointClient}.
+     */
+    @Override
+    public void close() {
+        this.window.awaitEmpty(JobRuntime.getInstance().getShutdownTimeout());
     }
 
     /**
      * Emits the notification in JSON String format.
+     * A String body is sent as it is, as plain text.
      *
      * @param body the object to be sent as payload
      * @throws NotificationException
      */
     @Override
     public void issue(T body) throws NotificationException {
+        HttpRequest request = request(body);
+        long start = System.nanoTime();
+        try {
+            httpClient.send(request);
+        } catch (NotificationException e) {
+            this.metrics.failed();
+            throw e;
+        }
+        this.metrics.sent(start);
+    }
+
+    /**
+     * Emits the notification in JSON String format.
+     * The calling thread is not blocked on the HTTP call.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed once the endpoint answered
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
+        final HttpRequest request;
+        try {
+            request = request(body);
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return window.submit(() -> {
+            final long start = System.nanoTime();
+            return httpClient.sendAsync(request).handle((response, exception) -> {
+                if (exception != null) {
+                    this.metrics.failed();
+                    throw exception instanceof CompletionException ? (CompletionException) exception : new CompletionException(exception);
+                }
+                this.metrics.sent(start);
+                return new Ack(endpoint.getUrl(), null);
+            });
+        });
+    }
+
+    /**
+     * Sets the {@link PayloadSerializer} turning the bodies into the request bodies.
+     *
+     * @param serializer the payload serializer
+     */
+    public void setSerializer(PayloadSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    private HttpRequest request(T body) throws NotificationException {
         if (body == null) throw new NotificationException("Body is null");
         if (this.endpoint == null || this.endpoint.getUrl() == null)  throw new NotificationException("Endpoint is null");
 
-        new RestTemplate().postForObject(endpoint.getUrl(),body, String.class);
+        try {
+            HttpRequest.Builder builder = httpClient.newRequest(this.endpoint.getUri());
+            if (body instanceof String) {
+                builder.header("Content-Type", "text/plain;charset=UTF-8");
+                builder.method(this.endpoint.getMethod().name(), HttpRequest.BodyPublishers.ofString((String) body, StandardCharsets.UTF_8));
+            } else {
+                builder.header("Content-Type", serializer.getContentType());
+                builder.method(this.endpoint.getMethod().name(), HttpRequest.BodyPublishers.ofByteArray(serializer.serialize(body)));
+            }
+            for (Header header : this.endpoint.getHeaders()) {
+                builder.setHeader(header.getName(), header.getValue());
+            }
+            return builder.build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new NotificationException(e.getMessage());
+        }
     }
 
     /**
@@ -45,12 +138,34 @@ public class EndpointEventProducer<T> implements EventProducer<T> {
         private List<Header> headers;
 
         public Endpoint(URL url) {
+            this(url, HttpMethod.POST, Collections.emptyList());
+        }
+
+        public Endpoint(URL url, HttpMethod method, List<Header> headers) {
             this.url = url;
+            this.method = method != null ? method : HttpMethod.POST;
+            this.headers = headers != null ? headers : Collections.emptyList();
         }
 
         public String getUrl() {
             return url.toString();
         }
+
+        public String getHost() {
+            return url != null ? url.getHost() : null;
+        }
+
+        public URI getUri() throws URISyntaxException {
+            return url.toURI();
+        }
+
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        public List<Header> getHeaders() {
+            return headers;
+        }
     }
 
 }
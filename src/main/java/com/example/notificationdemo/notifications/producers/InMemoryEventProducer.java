@@ -0,0 +1,115 @@
+package com.example.notificationdemo.notifications.producers;
+
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.inmemory.RingBuffer;
+import com.example.notificationdemo.notifications.inmemory.WaitStrategy;
+import com.example.notificationdemo.notifications.metrics.ProducerMetrics;
+import com.example.notificationdemo.utils.Properties;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * InMemoryEventProducer class implements a {@link EventProducer} delivering the notifications
+ * to the consumers living in the same JVM, through a lock-free {@link RingBuffer}: no broker, no serialization.
+ * Every consumer created from the producer receives all the notifications, like the subscribers of a topic,
+ * sharing the same body instances, which should therefore be immutable.
+ * When the slowest consumer lags 'inmemory.buffer_size' notifications behind, issuing a notification waits for it
+ * up to 'notifications.async.acquire_timeout' milliseconds, or fails right away if 'inmemory.backpressure' is 'fail'.
+ *
+ * @param <T> the type of the object it must be notified as body of the message.
+ */
+public class InMemoryEventProducer<T> implements EventProducer<T> {
+
+    private final String eventName;
+    private final RingBuffer<T> ringBuffer;
+    private final long timeout;
+    private final ProducerMetrics metrics;
+
+    /**
+     * Basic constructor for {@link InMemoryEventProducer}, configured through the 'inmemory.*' properties.
+     *
+     * @param eventName the event name
+     */
+    public InMemoryEventProducer(String eventName) {
+        this(eventName,
+                Integer.parseInt(Properties.get("inmemory.buffer_size")),
+                WaitStrategy.forName(Properties.get("inmemory.wait_strategy")),
+                "fail".equalsIgnoreCase(Properties.get("inmemory.backpressure")) ? 0 : Long.parseLong(Properties.get("notifications.async.acquire_timeout")));
+    }
+
+    /**
+     * Constructor for {@link InMemoryEventProducer}.
+     *
+     * @param eventName the event name
+     * @param bufferSize the number of notifications the buffer holds, a power of 2
+     * @param waitStrategy the strategy the consumers wait for new notifications with
+     * @param timeout the maximum time in milliseconds to wait for a free slot, zero to fail right away when the buffer is full
+     */
+    public InMemoryEventProducer(String eventName, int bufferSize, WaitStrategy waitStrategy, long timeout) {
+        this.eventName = eventName;
+        this.ringBuffer = new RingBuffer<>(bufferSize, waitStrategy);
+        this.timeout = timeout;
+        this.metrics = ProducerMetrics.of("inmemory", eventName);
+    }
+
+    /**
+     * Returns the event name.
+     *
+     * @return the event name
+     */
+    public String getEventName() {
+        return this.eventName;
+    }
+
+    /**
+     * Returns the {@link RingBuffer} the notifications are published to.
+     *
+     * @return the ring buffer
+     */
+    public RingBuffer<T> getRingBuffer() {
+        return this.ringBuffer;
+    }
+
+    /**
+     * Publishes the given object to the consumers.
+     *
+     * @param body the object to be sent as payload
+     * @throws NotificationException if the body is null or the buffer stays full past the timeout
+     */
+    @Override
+    public void issue(T body) throws NotificationException {
+        if (body == null) throw new NotificationException("Body is null");
+        publish(body);
+    }
+
+    /**
+     * Publishes the given object to the consumers.
+     * The returned future is already completed, once the notification is in the buffer.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed with the sequence of the notification
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
+        try {
+            if (body == null) throw new NotificationException("Body is null");
+            return CompletableFuture.completedFuture(new Ack(eventName, Long.toString(publish(body))));
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private long publish(T body) throws NotificationException {
+        long start = System.nanoTime();
+        try {
+            long sequence = ringBuffer.publish(body, timeout);
+            this.metrics.sent(start);
+            return sequence;
+        } catch (NotificationException e) {
+            this.metrics.failed();
+            throw e;
+        }
+    }
+}
@@ -1,32 +1,65 @@
 package com.example.notificationdemo.notifications.producers;
 
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.EncodedPayloadProducer;
 import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.InFlightWindow;
+import com.example.notificationdemo.notifications.KeyExtractor;
 import com.example.notificationdemo.notifications.NotificationException;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.notificationdemo.notifications.metrics.ProducerMetrics;
+import com.example.notificationdemo.notifications.serialization.EncodedPayload;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressor;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressors;
+import com.example.notificationdemo.notifications.serialization.PayloadEncoder;
+import com.example.notificationdemo.notifications.serialization.PayloadSerializer;
+import com.example.notificationdemo.utils.JobRuntime;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * KafkaChannel class is the Kafka implementation for the {@link EventProducer} interface.
  * It creates a topic or link to an existing one.
+ * The records carry the content type of their payload in the 'content-type' header.
+ * The batches of records can be compressed by the Kafka producer itself ('kafka.producer.compression_type'),
+ * which is the best option for small records; large payloads can also be compressed one by one
+ * ('notifications.compression'), flagged by the 'content-encoding' header.
+ * The producer settings come from the {@link KafkaProducerProfile} set by the 'kafka.producer.profile' property.
+ * The records are keyed by the {@link KeyExtractor}: by default they have no key, so the producer fills
+ * a batch per partition at a time (sticky partitioning); a business key keeps the related records in order
+ * on the same partition.
  *
  * @param <T> the payload object type issued
  */
-public class KafkaEventProducer<T> implements EventProducer<T> {
+public final class KafkaEventProducer<T> implements EncodedPayloadProducer<T> {
 
     private final String eventName;
     private String topic;
-    private KafkaProducer<String, String> producer;
-    private ObjectMapper mapper = new ObjectMapper();
+    private Producer<String, byte[]> producer;
+    private PayloadEncoder encoder = PayloadEncoder.fromProperties();
+    private Header contentTypeHeader = contentTypeHeader(encoder.getSerializer());
+    private KeyExtractor<? super T> keyExtractor = KeyExtractor.none();
+    private InFlightWindow window = InFlightWindow.fromProperties();
+    private final ProducerMetrics metrics;
 
     private String kafkaUrl = String.format("%s:%s", com.example.notificationdemo.utils.Properties.get("kafka.host"), com.example.notificationdemo.utils.Properties.get("kafka.port"));
 
@@ -51,11 +84,29 @@ public class KafkaEventProducer<T> implements EventProducer<T> {
         this.eventName = eventName;
         this.producer = initProducer();
         this.topic = topicName;
+        this.metrics = ProducerMetrics.of("kafka", eventName);
         if (Boolean.TRUE.equals(Boolean.parseBoolean(com.example.notificationdemo.utils.Properties.get("kafka.enable.topic.create")))) {
             // only if a specific flag is enabled the application has the priviledges to create a topic
             // else it must be attached to the topicName resource specified which already exists
             createTopic(topicName);
         }
+        JobRuntime.getInstance().registerProducer(this);
+    }
+
+    /**
+     * Constructor for {@link KafkaEventProducer}.
+     * It sends the records through the given producer to the given Kafka topic, which must already exist.
+     *
+     * @param eventName the event name
+     * @param topicName the Kafka topic name
+     * @param producer the Kafka producer
+     */
+    public KafkaEventProducer(String eventName, String topicName, Producer<String, byte[]> producer) {
+        this.eventName = eventName;
+        this.producer = producer;
+        this.topic = topicName;
+        this.metrics = ProducerMetrics.of("kafka", eventName);
+        JobRuntime.getInstance().registerProducer(this);
     }
 
     private void createTopic(String topicName) {
@@ -81,10 +132,12 @@ public class KafkaEventProducer<T> implements EventProducer<T> {
     }
 
     /**
-     * Emits the notification in JSON String format.
+     * Emits the notification, encoded by the PayloadEncoder of the producer.
+     * The calling thread waits until the brokers acknowledged the record, so that a failed send is thrown
+     * like on the other channels: use {@link #issueAsync(Object)} not to wait.
      *
      * @param body the object to be sent as payload
-     * @throws NotificationException
+     * @throws NotificationException if the record could not be encoded or sent
      */
     @Override
     public void issue(T body) throws NotificationException {
@@ -93,8 +146,97 @@ public class KafkaEventProducer<T> implements EventProducer<T> {
         if (this.producer == null) throw new NotificationException("KafkaProducer is null");
 
         try {
-            this.producer.send(new ProducerRecord<String, String>(this.topic, UUID.randomUUID().toString(), mapper.writeValueAsString(body)));
-        } catch (JsonProcessingException e) {
+            issueEncodedAsync(body, encoder.encode(body)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NotificationException) {
+                throw (NotificationException) e.getCause();
+            }
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new NotificationException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Emits the notification, encoded by the PayloadEncoder of the producer.
+     * The returned future is completed by the producer callback once the brokers acknowledged the record.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed with the partition and offset of the record
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
+        try {
+            if (body == null) throw new NotificationException("Body is null");
+            return issueEncodedAsync(body, encoder.encode(body));
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Emits the already encoded notification.
+     * The returned future is completed by the producer callback once the brokers acknowledged the record.
+     *
+     * @param body the object the payload was encoded from, used to extract the record key
+     * @param payload the encoded payload
+     * @return the future completed with the partition and offset of the record
+     */
+    @Override
+    public CompletableFuture<Ack> issueEncodedAsync(T body, EncodedPayload payload) {
+        if (this.topic == null) return CompletableFuture.failedFuture(new NotificationException("Kafka Topic is null"));
+        if (this.producer == null) return CompletableFuture.failedFuture(new NotificationException("KafkaProducer is null"));
+        final ProducerRecord<String, byte[]> record = record(body, payload);
+
+        return window.submit(() -> {
+            CompletableFuture<Ack> result = new CompletableFuture<>();
+            final long start = System.nanoTime();
+            this.producer.send(record, (metadata, exception) -> {
+                if (exception != null) {
+                    this.metrics.failed();
+                    result.completeExceptionally(new NotificationException(exception.getMessage(), exception));
+                } else {
+                    this.metrics.sent(start);
+                    result.complete(new Ack(metadata.topic(), metadata.partition() + "-" + metadata.offset()));
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Emits the notifications, encoded by the PayloadEncoder of the producer.
+     * The records are appended to the producer buffer and flushed together,
+     * so that they travel to the brokers in as few requests as possible.
+     *
+     * @param bodies the objects to be sent as payloads
+     * @throws NotificationException
+     */
+    @Override
+    public void issueAll(Collection<T> bodies) throws NotificationException {
+        if (bodies == null) throw new NotificationException("Bodies are null");
+        if (this.topic == null) throw new NotificationException("Kafka Topic is null");
+        if (this.producer == null) throw new NotificationException("KafkaProducer is null");
+
+        List<Future<RecordMetadata>> results = new ArrayList<>(bodies.size());
+        long start = System.nanoTime();
+        try {
+            for (T body : bodies) {
+                if (body == null) throw new NotificationException("Body is null");
+                results.add(this.producer.send(record(body)));
+            }
+        } finally {
+            this.producer.flush();
+        }
+        try {
+            for (Future<RecordMetadata> result : results) {
+                result.get();
+            }
+            this.metrics.sentBatch(start, results.size(), 0);
+        } catch (ExecutionException e) {
+            this.metrics.failedBatch(results.size());
+            throw new NotificationException(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new NotificationException(e.getMessage());
         }
     }
@@ -108,14 +250,71 @@ public class KafkaEventProducer<T> implements EventProducer<T> {
         return topic;
     }
 
-    private KafkaProducer<String, String> initProducer() {
+    /**
+     * Sets the {@link PayloadSerializer} turning the bodies into the record values.
+     *
+     * @param serializer the payload serializer
+     */
+    public void setSerializer(PayloadSerializer serializer) {
+        this.encoder = this.encoder.withSerializer(serializer);
+        this.contentTypeHeader = contentTypeHeader(serializer);
+    }
+
+    /**
+     * Sets the {@link KeyExtractor} keying the records: the records with the same key go to the same partition.
+     *
+     * @param keyExtractor the key extractor
+     */
+    public void setKeyExtractor(KeyExtractor<? super T> keyExtractor) {
+        this.keyExtractor = keyExtractor != null ? keyExtractor : KeyExtractor.none();
+    }
+
+    /**
+     * Sets the {@link PayloadCompressor} compressing the record values from the given size.
+     *
+     * @param compressor the payload compressor, null not to compress
+     * @param threshold the payload size, in bytes, from which the payloads are compressed
+     */
+    public void setCompressor(PayloadCompressor compressor, int threshold) {
+        this.encoder = this.encoder.withCompressor(compressor, threshold);
+    }
+
+    /**
+     * Returns the encoder the producer runs the bodies through.
+     *
+     * @return the payload encoder
+     */
+    @Override
+    public PayloadEncoder getEncoder() {
+        return this.encoder;
+    }
+
+    private ProducerRecord<String, byte[]> record(T body) throws NotificationException {
+        return record(body, encoder.encode(body));
+    }
+
+    private ProducerRecord<String, byte[]> record(T body, EncodedPayload payload) {
+        List<Header> headers = payload.isCompressed()
+                ? Arrays.asList(this.contentTypeHeader, new RecordHeader(PayloadCompressors.CONTENT_ENCODING_HEADER, payload.getContentEncoding().getBytes(StandardCharsets.UTF_8)))
+                : Collections.singletonList(this.contentTypeHeader);
+        return new ProducerRecord<String, byte[]>(this.topic, null, keyExtractor.extractKey(body), payload.getBytes(), headers);
+    }
+
+    private static Header contentTypeHeader(PayloadSerializer serializer) {
+        return new RecordHeader(PayloadCodecs.CONTENT_TYPE_HEADER, serializer.getContentType().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private KafkaProducer<String, byte[]> initProducer() {
 
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaUrl);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
+        // the values are already serialized by the PayloadSerializer
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArraySerializer");
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, com.example.notificationdemo.utils.Properties.get("kafka.producer.compression_type"));
+        KafkaProducerProfile.fromProperties().apply(props);
 
-        return new KafkaProducer<String, String>(props);
+        return new KafkaProducer<String, byte[]>(props);
     }
 
     /**
@@ -124,4 +323,14 @@ public class KafkaEventProducer<T> implements EventProducer<T> {
     public void closeProducer() {
         this.producer.close();
     }
+
+    /**
+     * Waits for the pending asynchronous sends and closes the Kafka producer, which sends the records it still buffers.
+     */
+    @Override
+    public void close() {
+        JobRuntime.getInstance().unregister(this);
+        this.window.awaitEmpty(JobRuntime.getInstance().getShutdownTimeout());
+        this.closeProducer();
+    }
 }
@@ -0,0 +1,70 @@
+package com.example.notificationdemo.notifications.producers;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Properties;
+
+/**
+ * KafkaProducerProfile is a set of tuned Kafka producer settings, chosen through the 'kafka.producer.profile' property.
+ * <ul>
+ *     <li>THROUGHPUT waits up to 20ms to fill large batches, and keeps up to five idempotent batches in flight
+ *     per broker, so retries never duplicate nor reorder the records.</li>
+ *     <li>LATENCY sends every record straight away, acknowledged by the partition leader only,
+ *     with a single batch in flight so that a retry can't reorder the records.</li>
+ *     <li>DEFAULT keeps the Kafka client defaults.</li>
+ * </ul>
+ * Each setting of the profile can be overridden by its own 'kafka.producer.*' property.
+ */
+public enum KafkaProducerProfile {
+
+    DEFAULT(null, null, null, null, null),
+    THROUGHPUT(20, 256 * 1024, "all", true, 5),
+    LATENCY(0, 16 * 1024, "1", false, 1);
+
+    private final Integer lingerMs;
+    private final Integer batchSize;
+    private final String acks;
+    private final Boolean idempotence;
+    private final Integer maxInFlight;
+
+    KafkaProducerProfile(Integer lingerMs, Integer batchSize, String acks, Boolean idempotence, Integer maxInFlight) {
+        this.lingerMs = lingerMs;
+        this.batchSize = batchSize;
+        this.acks = acks;
+        this.idempotence = idempotence;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Returns the profile named by the 'kafka.producer.profile' property.
+     *
+     * @return the producer profile
+     */
+    public static KafkaProducerProfile fromProperties() {
+        String profile = com.example.notificationdemo.utils.Properties.get("kafka.producer.profile");
+        return profile == null ? DEFAULT : KafkaProducerProfile.valueOf(profile.trim().toUpperCase());
+    }
+
+    /**
+     * Adds the settings of the profile to the given Kafka producer configuration,
+     * overridden by the 'kafka.producer.*' properties which are set.
+     *
+     * @param props the Kafka producer configuration
+     */
+    public void apply(Properties props) {
+        put(props, ProducerConfig.LINGER_MS_CONFIG, "kafka.producer.linger_ms", this.lingerMs);
+        put(props, ProducerConfig.BATCH_SIZE_CONFIG, "kafka.producer.batch_size", this.batchSize);
+        put(props, ProducerConfig.ACKS_CONFIG, "kafka.producer.acks", this.acks);
+        put(props, ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "kafka.producer.enable_idempotence", this.idempotence);
+        put(props, ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, "kafka.producer.max_in_flight", this.maxInFlight);
+    }
+
+    private static void put(Properties props, String config, String propertyName, Object profileValue) {
+        String override = com.example.notificationdemo.utils.Properties.get(propertyName);
+        if (override != null && !override.isEmpty()) {
+            props.put(config, override);
+        } else if (profileValue != null) {
+            props.put(config, String.valueOf(profileValue));
+        }
+    }
+}
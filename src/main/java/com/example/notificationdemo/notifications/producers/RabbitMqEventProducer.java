@@ -1,13 +1,34 @@
 package com.example.notificationdemo.notifications.producers;
 
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.EncodedPayloadProducer;
 import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.InFlightWindow;
 import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.RabbitMqChannelPool;
+import com.example.notificationdemo.notifications.connections.RabbitMqConfirmTracker;
+import com.example.notificationdemo.notifications.connections.RabbitMqConnectionManager;
+import com.example.notificationdemo.notifications.metrics.ProducerMetrics;
+import com.example.notificationdemo.notifications.serialization.EncodedPayload;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressor;
+import com.example.notificationdemo.notifications.serialization.PayloadEncoder;
+import com.example.notificationdemo.notifications.serialization.PayloadSerializer;
+import com.example.notificationdemo.utils.JobRuntime;
 import com.example.notificationdemo.utils.Properties;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.BuiltinExchangeType;
-import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Channel;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -15,15 +36,27 @@ import java.util.concurrent.TimeoutException;
  * on a RabbitMQ Exchange.
  * It automatically creates an Exchange (if it doesn't exist yet)
  * and publish the notification.
+ * The messages are published on channels borrowed from the shared {@link RabbitMqConnectionManager},
+ * so concurrent calls never share a channel.
+ * When 'rabbitmq.publisher.confirms' is enabled every message is tracked until the broker confirms it:
+ * the confirmations are collected asynchronously, so many messages can be waiting for their confirmation at once,
+ * up to the 'rabbitmq.confirm.window' bound.
+ * The content type of the payloads is carried by the AMQP 'content_type' message property,
+ * and the encoding of the compressed ones by the 'content_encoding' message property.
  *
  * @param <T> the body of the message passed as a JSON String
  */
-public class RabbitMqEventProducer<T> implements EventProducer<T> {
+public class RabbitMqEventProducer<T> implements EncodedPayloadProducer<T> {
 
     private final String eventName;
     private String exchange;
-    private com.rabbitmq.client.Channel channel;
-    private ObjectMapper mapper = new ObjectMapper();
+    private RabbitMqConnectionManager connectionManager;
+    private final boolean confirms;
+    private AMQP.BasicProperties messageProperties;
+    private final long confirmTimeout;
+    private PayloadEncoder encoder = PayloadEncoder.fromProperties();
+    private InFlightWindow window;
+    private final ProducerMetrics metrics;
 
     /**
      * Returns a new {@link RabbitMqEventProducer} by specifying the event name.
@@ -50,18 +83,54 @@ public class RabbitMqEventProducer<T> implements EventProducer<T> {
      * @throws TimeoutException
      */
     public static RabbitMqEventProducer create(String eventName, String exchangeName) throws IOException, TimeoutException {
-        return new RabbitMqEventProducer(eventName, exchangeName, channel());
+        return RabbitMqEventProducer.create(eventName, exchangeName, RabbitMqConnectionManager.getInstance());
     }
 
-    private RabbitMqEventProducer(String eventName, String exchangeName, final com.rabbitmq.client.Channel channel) throws IOException {
+    /**
+     * Returns a new {@link RabbitMqEventProducer} publishing through the given {@link RabbitMqConnectionManager}.
+     * The class attempts creating a new exchange or attaching to an existing one.
+     *
+     * @param eventName the event name
+     * @param exchangeName the exchange name
+     * @param connectionManager the connection manager to publish through
+     * @param <T> the type of the object notified as body of the message
+     * @return the RabbitMqChannel
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public static <T> RabbitMqEventProducer<T> create(String eventName, String exchangeName, RabbitMqConnectionManager connectionManager) throws IOException, TimeoutException {
+        return new RabbitMqEventProducer<>(eventName, exchangeName, connectionManager);
+    }
+
+    private RabbitMqEventProducer(String eventName, String exchangeName, final RabbitMqConnectionManager connectionManager) throws IOException, TimeoutException {
         this.eventName = eventName;
-        this.channel = channel;
+        this.connectionManager = connectionManager;
         this.exchange = exchangeName;
+        this.confirms = Boolean.parseBoolean(Properties.get("rabbitmq.publisher.confirms"));
+        this.confirmTimeout = Long.parseLong(Properties.get("rabbitmq.confirm.timeout"));
+        this.messageProperties = new AMQP.BasicProperties.Builder()
+                .contentType(this.encoder.getSerializer().getContentType())
+                // delivery mode 2 makes the broker write the message to disk
+                .deliveryMode(Boolean.parseBoolean(Properties.get("rabbitmq.publisher.persistent")) ? 2 : 1)
+                .build();
+        this.window = this.confirms
+                ? new InFlightWindow(Integer.parseInt(Properties.get("rabbitmq.confirm.window")), Long.parseLong(Properties.get("notifications.async.acquire_timeout")))
+                : InFlightWindow.fromProperties();
+        this.metrics = ProducerMetrics.of("rabbitmq", eventName);
         if (Boolean.TRUE.equals(Boolean.parseBoolean(Properties.get("rabbitmq.enable.exchange.create")))) {
             createExchange();
         }
     }
 
+    /**
+     * Waits for the pending asynchronous sends and, with publisher confirms, for the broker to confirm them.
+     * The channels belong to the {@link RabbitMqConnectionManager}, which is closed on its own.
+     */
+    @Override
+    public void close() {
+        this.window.awaitEmpty(JobRuntime.getInstance().getShutdownTimeout());
+    }
+
     /**
      * Returns the exchange name.
      *
@@ -72,27 +141,42 @@ public class RabbitMqEventProducer<T> implements EventProducer<T> {
     }
 
     /**
-     * Returns the {@link com.rabbitmq.client.Channel}
+     * Returns the {@link RabbitMqConnectionManager} the producer publishes through.
      *
-     * @return the rabbitmq channel
+     * @return the rabbitmq connection manager
      */
-    public com.rabbitmq.client.Channel getChannel() {
-        return this.channel;
+    public RabbitMqConnectionManager getConnectionManager() {
+        return this.connectionManager;
     }
 
-    private static com.rabbitmq.client.Channel channel() throws IOException, TimeoutException {
-        ConnectionFactory factory = new ConnectionFactory();
-
-        factory.setHost(Properties.get("rabbitmq.host"));
-        factory.setPort(Integer.parseInt(Properties.get("rabbitmq.port")));
-        factory.setUsername(Properties.get("rabbitmq.username"));
-        factory.setPassword(Properties.get("rabbitmq.password"));
+    /**
+     * Sets the {@link PayloadSerializer} turning the bodies into the message bodies.
+     *
+     * @param serializer the payload serializer
+     */
+    public void setSerializer(PayloadSerializer serializer) {
+        this.encoder = this.encoder.withSerializer(serializer);
+        this.messageProperties = this.messageProperties.builder().contentType(serializer.getContentType()).build();
+    }
 
-        return factory.newConnection().createChannel();
+    /**
+     * Sets the {@link PayloadCompressor} compressing the message bodies from the given size.
+     *
+     * @param compressor the payload compressor, null not to compress
+     * @param threshold the payload size, in bytes, from which the payloads are compressed
+     */
+    public void setCompressor(PayloadCompressor compressor, int threshold) {
+        this.encoder = this.encoder.withCompressor(compressor, threshold);
     }
 
-    private void createExchange() throws IOException {
-        this.channel.exchangeDeclare(this.exchange, BuiltinExchangeType.FANOUT, true, false, null);
+    private void createExchange() throws IOException, TimeoutException {
+        try {
+            this.connectionManager.getPublishingPool().withChannel(
+                    channel -> channel.exchangeDeclare(this.exchange, BuiltinExchangeType.FANOUT, true, false, null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e.getMessage());
+        }
     }
 
     /**
@@ -104,15 +188,222 @@ public class RabbitMqEventProducer<T> implements EventProducer<T> {
         return this.eventName;
     }
 
+    /**
+     * Publishes the message on the exchange.
+     * With publisher confirms enabled, it returns once the broker confirmed the message.
+     *
+     * @param body the object to be sent as payload
+     * @throws NotificationException
+     */
     @Override
     public void issue(T body) throws NotificationException {
-        if (body == null) throw new NotificationException("Body is null");
-        if (this.exchange == null)  throw new NotificationException("RabbitMQ exchange is null");
+        EncodedPayload message = serialize(body);
+
+        if (this.confirms) {
+            try {
+                publishConfirmed(message).get(this.confirmTimeout, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw new NotificationException(e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                throw new NotificationException("Timed out waiting for the RabbitMQ broker confirmation");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NotificationException(e.getMessage());
+            }
+            return;
+        }
+        publishUnconfirmed(message);
+    }
+
+    private void publishUnconfirmed(EncodedPayload message) throws NotificationException {
+        long start = System.nanoTime();
+        try {
+            this.connectionManager.getPublishingPool().withChannel(channel -> {
+                channel.basicPublish(this.exchange, "", properties(message), message.getBytes());
+                return null;
+            });
+            this.metrics.sent(start);
+        } catch (IOException | TimeoutException e) {
+            this.metrics.failed();
+            throw new NotificationException(e.getMessage());
+        } catch (InterruptedException e) {
+            this.metrics.failed();
+            Thread.currentThread().interrupt();
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes the message on the exchange without blocking the calling thread.
+     * With publisher confirms enabled, the returned future is completed with the publish sequence number
+     * once the broker confirmed the message, or exceptionally, reporting the sequence number, if the broker nacked it.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed once the message has been handed to (or confirmed by) the broker
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
+        try {
+            return issueEncodedAsync(body, serialize(body));
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Publishes the already encoded message on the exchange without blocking the calling thread.
+     *
+     * @param body the object the payload was encoded from
+     * @param payload the encoded payload
+     * @return the future completed once the message has been handed to (or confirmed by) the broker
+     */
+    @Override
+    public CompletableFuture<Ack> issueEncodedAsync(T body, EncodedPayload payload) {
+        if (this.exchange == null) return CompletableFuture.failedFuture(new NotificationException("RabbitMQ exchange is null"));
+        if (this.confirms) {
+            return publishConfirmed(payload);
+        }
+        return window.execute(() -> {
+            publishUnconfirmed(payload);
+            return new Ack(this.exchange, null);
+        });
+    }
 
+    /**
+     * Returns the encoder the producer runs the bodies through.
+     *
+     * @return the payload encoder
+     */
+    @Override
+    public PayloadEncoder getEncoder() {
+        return this.encoder;
+    }
+
+    /**
+     * Publishes the whole batch on a channel in confirm mode and waits
+     * for the broker confirmations of all of the messages at once.
+     *
+     * @param bodies the objects to be sent as payloads
+     * @throws NotificationException reporting the sequence numbers of the messages which were not confirmed
+     */
+    @Override
+    public void issueAll(Collection<T> bodies) throws NotificationException {
+        if (bodies == null) throw new NotificationException("Bodies are null");
+
+        List<EncodedPayload> messages = new ArrayList<>(bodies.size());
+        for (T body : bodies) {
+            messages.add(serialize(body));
+        }
+        // the confirmation of each message, by its sequence number on the channel
+        Map<Long, CompletableFuture<Long>> confirmations = new LinkedHashMap<>();
+        long start = System.nanoTime();
         try {
-            this.channel.basicPublish(this.exchange, "", null, mapper.writeValueAsString(body).getBytes("UTF-8"));
-        } catch (IOException e) {
+            RabbitMqChannelPool pool = this.connectionManager.getConfirmingPool();
+            pool.withChannel(channel -> {
+                for (EncodedPayload message : messages) {
+                    confirmations.put(channel.getNextPublishSeqNo(), publish(pool, channel, message));
+                }
+                return null;
+            });
+        } catch (IOException | TimeoutException e) {
+            this.metrics.failedBatch(messages.size());
+            throw new NotificationException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            this.metrics.failedBatch(messages.size());
+            Thread.currentThread().interrupt();
             throw new NotificationException(e.getMessage());
         }
+        try {
+            CompletableFuture.allOf(confirmations.values().toArray(new CompletableFuture<?>[0]))
+                    .get(this.confirmTimeout, TimeUnit.MILLISECONDS);
+            this.metrics.sentBatch(start, messages.size(), 0);
+        } catch (ExecutionException | TimeoutException e) {
+            int unconfirmed = (int) confirmations.values().stream()
+                    .filter(confirmation -> !confirmation.isDone() || confirmation.isCompletedExceptionally())
+                    .count();
+            this.metrics.sentBatch(start, messages.size(), unconfirmed);
+            throw new NotificationException(unconfirmed(confirmations, unconfirmed), e);
+        } catch (InterruptedException e) {
+            this.metrics.failedBatch(messages.size());
+            Thread.currentThread().interrupt();
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Describes the messages of a batch the broker did not confirm: the ones still waiting for their confirmation
+     * when the timeout expired, and the ones nacked or whose channel was closed, with the reason.
+     */
+    private String unconfirmed(Map<Long, CompletableFuture<Long>> confirmations, int unconfirmed) {
+        List<String> pending = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<Long, CompletableFuture<Long>> confirmation : confirmations.entrySet()) {
+            if (!confirmation.getValue().isDone()) {
+                pending.add(String.valueOf(confirmation.getKey()));
+            } else if (confirmation.getValue().isCompletedExceptionally()) {
+                // the reasons already name the sequence number of the message
+                failed.add(confirmation.getValue().handle((sequenceNumber, t) -> t.getCause() != null ? t.getCause().getMessage() : t.getMessage()).join());
+            }
+        }
+        StringBuilder message = new StringBuilder(String.format("%d of %d messages not confirmed on exchange %s",
+                unconfirmed, confirmations.size(), this.exchange));
+        if (!pending.isEmpty()) {
+            message.append(String.format(", no confirmation within %d ms for sequence numbers %s", this.confirmTimeout, String.join(", ", pending)));
+        }
+        if (!failed.isEmpty()) {
+            message.append(": ").append(String.join("; ", failed));
+        }
+        return message.toString();
+    }
+
+    private CompletableFuture<Ack> publishConfirmed(EncodedPayload message) {
+        return window.submit(() -> {
+            final long start = System.nanoTime();
+            try {
+                RabbitMqChannelPool pool = this.connectionManager.getConfirmingPool();
+                return pool.withChannel(channel -> publish(pool, channel, message))
+                        .handle((sequenceNumber, exception) -> {
+                            if (exception != null) {
+                                this.metrics.failed();
+                                throw exception instanceof CompletionException ? (CompletionException) exception : new CompletionException(exception);
+                            }
+                            this.metrics.sent(start);
+                            return new Ack(this.exchange, String.valueOf(sequenceNumber));
+                        });
+            } catch (IOException | TimeoutException e) {
+                this.metrics.failed();
+                return CompletableFuture.failedFuture(new NotificationException(e.getMessage()));
+            } catch (InterruptedException e) {
+                this.metrics.failed();
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(new NotificationException(e.getMessage()));
+            }
+        });
+    }
+
+    private CompletableFuture<Long> publish(RabbitMqChannelPool pool, Channel channel, EncodedPayload message) {
+        RabbitMqConfirmTracker tracker = pool.tracker(channel);
+        long sequenceNumber = channel.getNextPublishSeqNo();
+        // the message is registered before being published, so its confirmation can't be missed
+        CompletableFuture<Long> confirmation = tracker.register(sequenceNumber);
+        try {
+            channel.basicPublish(this.exchange, "", properties(message), message.getBytes());
+        } catch (IOException | RuntimeException e) {
+            tracker.fail(sequenceNumber, e);
+        }
+        return confirmation;
+    }
+
+    private AMQP.BasicProperties properties(EncodedPayload message) {
+        return message.isCompressed()
+                ? this.messageProperties.builder().contentEncoding(message.getContentEncoding()).build()
+                : this.messageProperties;
+    }
+
+    private EncodedPayload serialize(T body) throws NotificationException {
+        if (body == null) throw new NotificationException("Body is null");
+        if (this.exchange == null)  throw new NotificationException("RabbitMQ exchange is null");
+
+        return encoder.encode(body);
     }
 }
@@ -1,17 +1,34 @@
 package com.example.notificationdemo.notifications.producers;
 
+import com.example.notificationdemo.notifications.Ack;
+import com.example.notificationdemo.notifications.EncodedPayloadProducer;
 import com.example.notificationdemo.notifications.EventProducer;
+import com.example.notificationdemo.notifications.InFlightWindow;
 import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.connections.AwsClientManager;
+import com.example.notificationdemo.notifications.metrics.ProducerMetrics;
+import com.example.notificationdemo.notifications.serialization.EncodedPayload;
+import com.example.notificationdemo.notifications.serialization.PayloadCodecs;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressor;
+import com.example.notificationdemo.notifications.serialization.PayloadCompressors;
+import com.example.notificationdemo.notifications.serialization.PayloadEncoder;
+import com.example.notificationdemo.notifications.serialization.PayloadSerializer;
+import com.example.notificationdemo.utils.JobRuntime;
 import com.example.notificationdemo.utils.Properties;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import software.amazon.awssdk.services.sns.SnsClient;
-import software.amazon.awssdk.services.sns.SnsClientBuilder;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
 import software.amazon.awssdk.services.sns.model.*;
 
 import javax.naming.OperationNotSupportedException;
-import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 // https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/examples-simple-notification-service.html
 
@@ -20,17 +37,32 @@ import java.net.URISyntaxException;
  * on a AWS Simple Notification Service (SNS).
  * It automatically creates an AWS SNS Topic (if it doesn't exist yet)
  * and publish the notification.
+ * Every message carries the content type of its payload in the 'contentType' message attribute:
+ * since SNS messages are text, binary payloads are Base64 encoded and flagged
+ * by the 'contentTransferEncoding' message attribute.
+ * Compressing the large payloads ('notifications.compression') keeps them within the 256 KB SNS message limit:
+ * their encoding is carried by the 'contentEncoding' message attribute.
+ * The producers publish through the non-blocking SNS client shared by the {@link AwsClientManager},
+ * so the asynchronous sends don't hold any thread while waiting for AWS.
  *
  * @param <T> the body of the message passed as a JSON String
  */
-public class SnsEventProducer<T> implements EventProducer<T> {
+public class SnsEventProducer<T> implements EncodedPayloadProducer<T> {
 
     private final String eventName;
-    private SnsClient snsClient;
+    private SnsAsyncClient snsClient;
     private String topicArn;
-    private ObjectMapper mapper = new ObjectMapper();
+    private PayloadEncoder encoder = PayloadEncoder.fromProperties();
+    private Map<String, MessageAttributeValue> messageAttributes = messageAttributes(encoder.getSerializer());
+    private InFlightWindow window = InFlightWindow.fromProperties();
+    private final ProducerMetrics metrics;
 
     private final static String SNS_CREATION_NOT_ALLOWED = "the application is not allowed to create a new AWS SNS topic";
+    // the maximum number of entries accepted by a single AWS SNS PublishBatch request
+    private final static int SNS_MAX_BATCH_SIZE = 10;
+    // the maximum size in bytes of the messages, with their attributes, of a single publish or PublishBatch request
+    private final static int SNS_MAX_BATCH_BYTES = 262144;
+    private final static String CONTENT_TRANSFER_ENCODING_ATTRIBUTE = "contentTransferEncoding";
 
     /**
      * Returns a new {@link SnsEventProducer}. It tries to create the AWS SNS topic
@@ -42,8 +74,8 @@ public class SnsEventProducer<T> implements EventProducer<T> {
      * @throws OperationNotSupportedException
      */
     public static SnsEventProducer createProducer(String eventName) throws URISyntaxException, OperationNotSupportedException {
-        SnsClient snsClient = snsClient();
-        return new SnsEventProducer(eventName, snsClient(), createSNSTopic(snsClient, eventName +"-sns"));
+        SnsAsyncClient snsClient = AwsClientManager.getInstance().getSnsClient();
+        return new SnsEventProducer(eventName, snsClient, createSNSTopic(snsClient, eventName +"-sns"));
     }
 
     /**
@@ -55,13 +87,36 @@ public class SnsEventProducer<T> implements EventProducer<T> {
      * @throws URISyntaxException
      */
     public static SnsEventProducer createProducer(String eventName, String topicArn) throws URISyntaxException {
-        return new SnsEventProducer(eventName, snsClient(), topicArn);
+        return new SnsEventProducer(eventName, AwsClientManager.getInstance().getSnsClient(), topicArn);
     }
 
-    private SnsEventProducer(String eventName, SnsClient snsClient, String topicArn) {
+    /**
+     * Returns a new {@link SnsEventProducer} publishing through the given client.
+     *
+     * @param eventName the name of the event to be sent on the channel
+     * @param snsClient the AWS SNS client, which stays owned by the caller
+     * @param topicArn the existing topic arn to be attached to
+     * @param <T> the type of the object notified as body of the message
+     * @return the SnsChannel
+     */
+    public static <T> SnsEventProducer<T> createProducer(String eventName, SnsAsyncClient snsClient, String topicArn) {
+        return new SnsEventProducer<>(eventName, snsClient, topicArn);
+    }
+
+    private SnsEventProducer(String eventName, SnsAsyncClient snsClient, String topicArn) {
         this.eventName = eventName;
         this.snsClient = snsClient;
         this.topicArn = topicArn;
+        this.metrics = ProducerMetrics.of("sns", eventName);
+    }
+
+    /**
+     * Waits for the pending asynchronous sends.
+     * The AWS SNS client is shared, and closed by the {@link AwsClientManager} on its own.
+     */
+    @Override
+    public void close() {
+        this.window.awaitEmpty(JobRuntime.getInstance().getShutdownTimeout());
     }
 
     /**
@@ -84,10 +139,104 @@ public class SnsEventProducer<T> implements EventProducer<T> {
         if (body == null) throw new NotificationException("Body is null");
         if (this.snsClient == null)  throw new NotificationException("SnsClient is null");
 
+        EncodedPayload payload = encoder.encode(body);
+        pubTopic(snsClient, payload.toText(), messageAttributes(payload), topicArn);
+    }
+
+    /**
+     * Issues the given object on the SNS channel.
+     * The publish request is sent by the non-blocking client, so the calling thread is not blocked.
+     *
+     * @param body the object to be sent as payload
+     * @return the future completed with the SNS message id
+     */
+    @Override
+    public CompletableFuture<Ack> issueAsync(T body) {
         try {
-            pubTopic(snsClient, mapper.writeValueAsString(body), topicArn);
-        } catch (JsonProcessingException e) {
-            throw new NotificationException(e.getMessage());
+            if (body == null) throw new NotificationException("Body is null");
+            return issueEncodedAsync(body, encoder.encode(body));
+        } catch (NotificationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Issues the already encoded notification on the SNS channel.
+     * The publish request is sent by the non-blocking client, so the calling thread is not blocked.
+     *
+     * @param body the object the payload was encoded from
+     * @param payload the encoded payload
+     * @return the future completed with the SNS message id
+     */
+    @Override
+    public CompletableFuture<Ack> issueEncodedAsync(T body, EncodedPayload payload) {
+        if (this.snsClient == null) return CompletableFuture.failedFuture(new NotificationException("SnsClient is null"));
+
+        final PublishRequest request = PublishRequest.builder()
+                .message(payload.toText())
+                .messageAttributes(messageAttributes(payload))
+                .topicArn(topicArn)
+                .build();
+        return window.submit(() -> {
+            CompletableFuture<Ack> result = new CompletableFuture<>();
+            final long start = System.nanoTime();
+            snsClient.publish(request).whenComplete((response, exception) -> {
+                if (exception != null) {
+                    this.metrics.failed();
+                    result.completeExceptionally(new NotificationException(AwsClientManager.errorMessage(exception), unwrap(exception)));
+                } else {
+                    this.metrics.sent(start);
+                    result.complete(new Ack(topicArn, response.messageId()));
+                }
+            });
+            return result;
+        });
+    }
+
+    private static Throwable unwrap(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+    }
+
+    /**
+     * Issues the given objects on the SNS channel through PublishBatch requests
+     * of at most ten entries and 256 KB each.
+     *
+     * @param bodies the objects to be sent as payloads
+     * @throws NotificationException
+     */
+    @Override
+    public void issueAll(Collection<T> bodies) throws NotificationException {
+        if (bodies == null) throw new NotificationException("Bodies are null");
+        if (this.snsClient == null)  throw new NotificationException("SnsClient is null");
+
+        List<PublishBatchRequestEntry> entries = new ArrayList<>(SNS_MAX_BATCH_SIZE);
+        int batchBytes = 0;
+        for (T body : bodies) {
+            if (body == null) throw new NotificationException("Body is null");
+            EncodedPayload payload = encoder.encode(body);
+            String message = payload.toText();
+            Map<String, MessageAttributeValue> attributes = messageAttributes(payload);
+            int entryBytes = size(message, attributes);
+            // the entries collected so far are sent before the request grows past the limit
+            if (!entries.isEmpty() && batchBytes + entryBytes > SNS_MAX_BATCH_BYTES) {
+                pubTopicBatch(snsClient, entries, topicArn);
+                entries.clear();
+                batchBytes = 0;
+            }
+            entries.add(PublishBatchRequestEntry.builder()
+                    .id(String.valueOf(entries.size()))
+                    .message(message)
+                    .messageAttributes(attributes)
+                    .build());
+            batchBytes += entryBytes;
+            if (entries.size() == SNS_MAX_BATCH_SIZE) {
+                pubTopicBatch(snsClient, entries, topicArn);
+                entries.clear();
+                batchBytes = 0;
+            }
+        }
+        if (!entries.isEmpty()) {
+            pubTopicBatch(snsClient, entries, topicArn);
         }
     }
 
@@ -100,26 +249,100 @@ public class SnsEventProducer<T> implements EventProducer<T> {
         return this.topicArn;
     }
 
+    /**
+     * Returns the encoder the producer runs the bodies through.
+     *
+     * @return the payload encoder
+     */
+    @Override
+    public PayloadEncoder getEncoder() {
+        return this.encoder;
+    }
+
     /**
      * Returns the AWS SNS Client.
      *
      * @return the sns client
      */
-    public SnsClient getSnsClient() {
+    public SnsAsyncClient getSnsClient() {
         return snsClient;
     }
 
-    private static SnsClient snsClient() throws URISyntaxException {
-        SnsClientBuilder snsClientBuilder = SnsClient.builder();
-        /* overrides the aws endpoint to the localstack endpoint (in place of the default AWS endpoint of the SnsClient)
-           if the aws.endpoint property is specified in the application.properties file */
-        if (Properties.get("aws.endpoint") != null) {
-            snsClientBuilder.endpointOverride(new URI(Properties.get("aws.endpoint")));
+    /**
+     * Sets the {@link PayloadSerializer} turning the bodies into the SNS messages.
+     *
+     * @param serializer the payload serializer
+     */
+    public void setSerializer(PayloadSerializer serializer) {
+        this.encoder = this.encoder.withSerializer(serializer);
+        this.messageAttributes = messageAttributes(serializer);
+    }
+
+    /**
+     * Sets the {@link PayloadCompressor} compressing the SNS messages from the given size.
+     *
+     * @param compressor the payload compressor, null not to compress
+     * @param threshold the payload size, in bytes, from which the payloads are compressed
+     */
+    public void setCompressor(PayloadCompressor compressor, int threshold) {
+        this.encoder = this.encoder.withCompressor(compressor, threshold);
+    }
+
+    private Map<String, MessageAttributeValue> messageAttributes(EncodedPayload payload) {
+        if (!payload.isCompressed()) {
+            return this.messageAttributes;
         }
-        return snsClientBuilder.build();
+        Map<String, MessageAttributeValue> attributes = new HashMap<>(this.messageAttributes);
+        attributes.put(CONTENT_TRANSFER_ENCODING_ATTRIBUTE, stringAttribute("base64"));
+        attributes.put(PayloadCompressors.CONTENT_ENCODING_PROPERTY, stringAttribute(payload.getContentEncoding()));
+        return attributes;
     }
 
-    private static String createSNSTopic(SnsClient snsClient, String topicName) throws OperationNotSupportedException {
+    /**
+     * Returns the size SNS counts for a message: its UTF-8 bytes plus the name, data type and value of each attribute.
+     */
+    private static int size(String message, Map<String, MessageAttributeValue> attributes) {
+        int size = utf8Length(message);
+        for (Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+            size += utf8Length(attribute.getKey()) + utf8Length(attribute.getValue().dataType()) + utf8Length(attribute.getValue().stringValue());
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        if (value == null) return 0;
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // a surrogate pair is a single 4 bytes code point
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static MessageAttributeValue stringAttribute(String value) {
+        return MessageAttributeValue.builder().dataType("String").stringValue(value).build();
+    }
+
+    private static Map<String, MessageAttributeValue> messageAttributes(PayloadSerializer serializer) {
+        MessageAttributeValue contentType = stringAttribute(serializer.getContentType());
+        if (!serializer.isBinary()) {
+            return Map.of(PayloadCodecs.CONTENT_TYPE_PROPERTY, contentType);
+        }
+        return Map.of(PayloadCodecs.CONTENT_TYPE_PROPERTY, contentType,
+                CONTENT_TRANSFER_ENCODING_ATTRIBUTE, stringAttribute("base64"));
+    }
+
+    private static String createSNSTopic(SnsAsyncClient snsClient, String topicName) throws OperationNotSupportedException {
         if (Boolean.FALSE.equals(Boolean.parseBoolean(Properties.get("aws.enable.sns.create")))) {
             throw new OperationNotSupportedException(SNS_CREATION_NOT_ALLOWED);
         }
@@ -127,27 +350,49 @@ public class SnsEventProducer<T> implements EventProducer<T> {
             CreateTopicRequest request = CreateTopicRequest.builder()
                     .name(topicName)
                     .build();
-            CreateTopicResponse result = snsClient.createTopic(request);
+            CreateTopicResponse result = AwsClientManager.join(snsClient.createTopic(request));
             return result.topicArn();
-        } catch (SnsException e) {
-            System.err.println(e.awsErrorDetails().errorMessage());
+        } catch (SdkException e) {
+            System.err.println(AwsClientManager.errorMessage(e));
         }
         return "";
     }
 
-    private void pubTopic(SnsClient snsClient, String message, String topicArn) {
+    private void pubTopic(SnsAsyncClient snsClient, String message, Map<String, MessageAttributeValue> messageAttributes, String topicArn) throws NotificationException {
+        long start = System.nanoTime();
         try {
             PublishRequest request = PublishRequest.builder()
                     .message(message)
+                    .messageAttributes(messageAttributes)
                     .topicArn(topicArn)
                     .build();
 
-            PublishResponse result = snsClient.publish(request);
-            System.out.println(result.messageId() + " Message sent. Status is " + result.sdkHttpResponse().statusCode());
+            AwsClientManager.join(snsClient.publish(request));
+            this.metrics.sent(start);
+        } catch (SdkException e) {
+            this.metrics.failed();
+            throw new NotificationException(AwsClientManager.errorMessage(e), e);
+        }
+    }
+
+    private void pubTopicBatch(SnsAsyncClient snsClient, List<PublishBatchRequestEntry> entries, String topicArn) throws NotificationException {
+        long start = System.nanoTime();
+        try {
+            PublishBatchRequest request = PublishBatchRequest.builder()
+                    .publishBatchRequestEntries(entries)
+                    .topicArn(topicArn)
+                    .build();
 
-        } catch (SnsException e) {
-            System.err.println(e.awsErrorDetails().errorMessage());
-            System.exit(1);
+            PublishBatchResponse result = AwsClientManager.join(snsClient.publishBatch(request));
+            this.metrics.sentBatch(start, entries.size(), result.hasFailed() ? result.failed().size() : 0);
+            if (result.hasFailed() && !result.failed().isEmpty()) {
+                throw new NotificationException(result.failed().stream()
+                        .map(failure -> String.format("entry %s failed: %s", failure.id(), failure.message()))
+                        .collect(Collectors.joining(", ")));
+            }
+        } catch (SdkException e) {
+            this.metrics.failedBatch(entries.size());
+            throw new NotificationException(AwsClientManager.errorMessage(e), e);
         }
     }
 
@@ -0,0 +1,61 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * EncodedPayload is a payload ready to be sent on the wire, along with the metadata the consumers need to read it back.
+ */
+public class EncodedPayload {
+
+    private final byte[] bytes;
+    private final String contentType;
+    private final String contentEncoding;
+    private final boolean binary;
+
+    public EncodedPayload(byte[] bytes, String contentType, String contentEncoding, boolean binary) {
+        this.bytes = bytes;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.binary = binary;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the encoding of the compressed payload.
+     *
+     * @return the content encoding, or null if the payload is not compressed
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public boolean isCompressed() {
+        return contentEncoding != null;
+    }
+
+    /**
+     * Returns whether the payload must be Base64 encoded to travel as text: it is binary or compressed.
+     *
+     * @return true if the payload is not UTF-8 text
+     */
+    public boolean isBinary() {
+        return binary || isCompressed();
+    }
+
+    /**
+     * Returns the payload as text, for the brokers whose API only accepts text messages.
+     *
+     * @return the payload itself if it is UTF-8 text, its Base64 encoding otherwise
+     */
+    public String toText() {
+        return isBinary() ? Base64.getEncoder().encodeToString(bytes) : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JacksonPayloadCodec is a {@link PayloadCodec} for any data format Jackson supports (JSON, CBOR, Smile...),
+ * depending on the {@link ObjectMapper} it is built with.
+ * An {@link ObjectWriter} and an {@link ObjectReader} specialized for each payload class are built
+ * the first time the class is met, then reused, so the serializers lookup is not repeated on every message.
+ * Jackson recycles its internal buffers, so the only allocation left per message is the returned payload.
+ */
+public class JacksonPayloadCodec implements PayloadCodec {
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    private final ObjectMapper mapper;
+    private final String contentType;
+    private final boolean binary;
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for {@link JacksonPayloadCodec}.
+     *
+     * @param mapper the object mapper, built on the factory of the data format
+     * @param contentType the MIME type of the data format
+     * @param binary whether the data format is binary
+     */
+    public JacksonPayloadCodec(ObjectMapper mapper, String contentType, boolean binary) {
+        this.mapper = mapper;
+        this.contentType = contentType;
+        this.binary = binary;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public byte[] serialize(Object body) throws NotificationException {
+        if (body == null) throw new NotificationException("Body is null");
+        try {
+            return writer(body.getClass()).writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    @Override
+    public String serializeToString(Object body) throws NotificationException {
+        if (body == null) throw new NotificationException("Body is null");
+        if (binary) {
+            return Base64.getEncoder().encodeToString(serialize(body));
+        }
+        try {
+            return writer(body.getClass()).writeValueAsString(body);
+        } catch (IOException e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] payload, Class<T> type) throws NotificationException {
+        if (payload == null) throw new NotificationException("Payload is null");
+        try {
+            return reader(type).readValue(payload);
+        } catch (IOException e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    @Override
+    public String toText(byte[] payload) throws NotificationException {
+        if (payload == null) return null;
+        if (!binary) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+        try {
+            return JSON_MAPPER.writeValueAsString(mapper.readTree(payload));
+        } catch (IOException e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the {@link ObjectWriter} specialized for the given payload class.
+     *
+     * @param type the payload class
+     * @return the object writer
+     */
+    public ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        return writer != null ? writer : writers.computeIfAbsent(type, mapper::writerFor);
+    }
+
+    /**
+     * Returns the {@link ObjectReader} specialized for the given payload class.
+     *
+     * @param type the payload class
+     * @return the object reader
+     */
+    public ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        return reader != null ? reader : readers.computeIfAbsent(type, mapper::readerFor);
+    }
+}
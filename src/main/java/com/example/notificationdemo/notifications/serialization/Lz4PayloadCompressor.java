@@ -0,0 +1,71 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lz4PayloadCompressor is the {@link PayloadCompressor} for the LZ4 block format: the fastest one,
+ * the right choice when CPU matters more than the last bytes.
+ * The compressed payload starts with the length of the original payload (4 bytes, big endian),
+ * which the block format doesn't record.
+ * As that length is read from the message, it is checked before allocating: it can't exceed the configured maximum,
+ * nor the 255 times the compressed size LZ4 can expand to.
+ */
+public class Lz4PayloadCompressor implements PayloadCompressor {
+
+    private static final int LENGTH_PREFIX = Integer.BYTES;
+    // a byte of LZ4 block expands to 255 bytes at most
+    private static final int MAX_RATIO = 255;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+    private final int maxSize;
+
+    /**
+     * Constructor for {@link Lz4PayloadCompressor}.
+     *
+     * @param maxSize the largest original size, in bytes, of the payloads it decompresses
+     */
+    public Lz4PayloadCompressor(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String getEncoding() {
+        return "lz4";
+    }
+
+    @Override
+    public byte[] compress(byte[] payload) throws NotificationException {
+        try {
+            byte[] compressed = new byte[LENGTH_PREFIX + compressor.maxCompressedLength(payload.length)];
+            ByteBuffer.wrap(compressed).putInt(payload.length);
+            int length = compressor.compress(payload, 0, payload.length, compressed, LENGTH_PREFIX);
+            return Arrays.copyOf(compressed, LENGTH_PREFIX + length);
+        } catch (LZ4Exception e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] payload) throws NotificationException {
+        if (payload.length < LENGTH_PREFIX) throw new NotificationException("LZ4 payload is truncated");
+        int length = ByteBuffer.wrap(payload).getInt();
+        if (length < 0 || length > maxSize || (long) length > (long) (payload.length - LENGTH_PREFIX) * MAX_RATIO) {
+            throw new NotificationException(String.format("LZ4 payload of %d bytes declares an invalid original size of %d bytes", payload.length, length));
+        }
+        try {
+            byte[] decompressed = new byte[length];
+            decompressor.decompress(payload, LENGTH_PREFIX, decompressed, 0, decompressed.length);
+            return decompressed;
+        } catch (LZ4Exception e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+
+/**
+ * PayloadCodec is a {@link PayloadSerializer} which can also read back the payloads it wrote.
+ * Producers and consumers share the codecs registered in {@link PayloadCodecs},
+ * matching them through the content type carried by each message.
+ */
+public interface PayloadCodec extends PayloadSerializer {
+
+    /**
+     * Deserializes the payload into an instance of the given type.
+     *
+     * @param payload the serialized payload
+     * @param type the type of the body
+     * @param <T> the type of the body
+     * @return the deserialized body
+     * @throws NotificationException
+     */
+    <T> T deserialize(byte[] payload, Class<T> type) throws NotificationException;
+
+    /**
+     * Returns the payload as JSON text, for the consumers handing the messages over as strings.
+     * Binary payloads are transcoded.
+     *
+     * @param payload the serialized payload
+     * @return the payload as JSON text
+     * @throws NotificationException
+     */
+    String toText(byte[] payload) throws NotificationException;
+}
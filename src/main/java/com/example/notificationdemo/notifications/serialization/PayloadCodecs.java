@@ -0,0 +1,131 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.utils.Properties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PayloadCodecs is the registry of the {@link PayloadCodec}s shared by producers and consumers.
+ * The producers serialize with the default codec, set through the 'notifications.codec' property,
+ * and stamp its content type on every message (a Kafka header, the AMQP content type, a JMS property
+ * or an SNS message attribute): the consumers look the codec up by that content type.
+ * Messages without a content type are read as JSON.
+ */
+public final class PayloadCodecs {
+
+    /**
+     * The name of the Kafka header carrying the content type.
+     */
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+
+    /**
+     * The name of the JMS property and SNS message attribute carrying the content type
+     * (JMS property names must be valid Java identifiers).
+     */
+    public static final String CONTENT_TYPE_PROPERTY = "contentType";
+
+    public static final PayloadCodec JSON = new JacksonPayloadCodec(new ObjectMapper(), "application/json", false);
+    public static final PayloadCodec CBOR = new JacksonPayloadCodec(new ObjectMapper(new CBORFactory()), "application/cbor", true);
+    public static final PayloadCodec SMILE = new JacksonPayloadCodec(new ObjectMapper(new SmileFactory()), "application/x-jackson-smile", true);
+
+    private static final Map<String, PayloadCodec> codecs = new ConcurrentHashMap<>();
+    private static final Map<String, String> aliases = Map.of(
+            "json", JSON.getContentType(),
+            "cbor", CBOR.getContentType(),
+            "smile", SMILE.getContentType());
+    private static volatile PayloadCodec defaultCodec;
+
+    static {
+        register(JSON);
+        register(CBOR);
+        register(SMILE);
+    }
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * Registers a codec, replacing the one registered for the same content type if any.
+     *
+     * @param codec the codec to be registered
+     */
+    public static void register(PayloadCodec codec) {
+        codecs.put(normalize(codec.getContentType()), codec);
+    }
+
+    /**
+     * Returns the codec the producers serialize with, named by the 'notifications.codec' property
+     * either through its content type or through its short name ('json', 'cbor', 'smile').
+     *
+     * @return the default codec
+     */
+    public static PayloadCodec getDefault() {
+        if (defaultCodec == null) {
+            synchronized (PayloadCodecs.class) {
+                if (defaultCodec == null) {
+                    String name = Properties.get("notifications.codec");
+                    PayloadCodec codec = codecs.get(normalize(aliases.getOrDefault(name, name)));
+                    if (codec == null) {
+                        System.err.println(String.format("Unknown codec %s, falling back to %s", name, JSON.getContentType()));
+                        codec = JSON;
+                    }
+                    defaultCodec = codec;
+                }
+            }
+        }
+        return defaultCodec;
+    }
+
+    /**
+     * Returns the codec registered for the given content type. A null content type stands for JSON.
+     *
+     * @param contentType the content type of the message
+     * @return the codec
+     * @throws NotificationException if no codec is registered for the content type
+     */
+    public static PayloadCodec forContentType(String contentType) throws NotificationException {
+        if (contentType == null || contentType.isEmpty()) {
+            return JSON;
+        }
+        PayloadCodec codec = codecs.get(normalize(contentType));
+        if (codec == null) throw new NotificationException("No codec registered for content type " + contentType);
+        return codec;
+    }
+
+    /**
+     * Returns the payload as JSON text, decoding it with the codec of the given content type.
+     *
+     * @param contentType the content type of the message
+     * @param payload the serialized payload
+     * @return the payload as JSON text
+     * @throws NotificationException
+     */
+    public static String toText(String contentType, byte[] payload) throws NotificationException {
+        return forContentType(contentType).toText(payload);
+    }
+
+    /**
+     * Returns the payload as JSON text, decompressing it according to the given encoding first
+     * and then decoding it with the codec of the given content type.
+     *
+     * @param contentType the content type of the message
+     * @param contentEncoding the content encoding of the message, null if it is not compressed
+     * @param payload the payload as received
+     * @return the payload as JSON text
+     * @throws NotificationException
+     */
+    public static String toText(String contentType, String contentEncoding, byte[] payload) throws NotificationException {
+        return forContentType(contentType).toText(PayloadCompressors.decompress(contentEncoding, payload));
+    }
+
+    // drops the parameters (e.g. '; charset=UTF-8') and the case differences
+    private static String normalize(String contentType) {
+        int parameters = contentType.indexOf(';');
+        return (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim().toLowerCase();
+    }
+}
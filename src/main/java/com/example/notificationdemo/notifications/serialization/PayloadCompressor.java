@@ -0,0 +1,36 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+
+/**
+ * PayloadCompressor compresses the serialized payloads before they are sent on the wire.
+ * Implementations are shared by all the producers and consumers, so they must be thread safe.
+ */
+public interface PayloadCompressor {
+
+    /**
+     * Returns the name of the encoding, carried along with every compressed message
+     * so that the consumers can pick the matching {@link PayloadCompressor}.
+     *
+     * @return the content encoding
+     */
+    String getEncoding();
+
+    /**
+     * Compresses the payload.
+     *
+     * @param payload the serialized payload
+     * @return the compressed payload
+     * @throws NotificationException
+     */
+    byte[] compress(byte[] payload) throws NotificationException;
+
+    /**
+     * Decompresses the payload.
+     *
+     * @param payload the compressed payload
+     * @return the serialized payload
+     * @throws NotificationException
+     */
+    byte[] decompress(byte[] payload) throws NotificationException;
+}
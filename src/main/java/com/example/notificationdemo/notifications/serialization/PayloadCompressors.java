@@ -0,0 +1,123 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.utils.Properties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PayloadCompressors is the registry of the {@link PayloadCompressor}s shared by producers and consumers.
+ * Compression is opt-in: the producers compress with the compressor named by the 'notifications.compression' property
+ * the payloads larger than 'notifications.compression.threshold' bytes, and stamp its encoding on the message
+ * (a Kafka header, the AMQP content encoding, a JMS property or an SNS message attribute):
+ * the consumers look the compressor up by that encoding. Messages without an encoding are not compressed.
+ */
+public final class PayloadCompressors {
+
+    /**
+     * The name of the Kafka header carrying the content encoding.
+     */
+    public static final String CONTENT_ENCODING_HEADER = "content-encoding";
+
+    /**
+     * The name of the JMS property and SNS message attribute carrying the content encoding.
+     */
+    public static final String CONTENT_ENCODING_PROPERTY = "contentEncoding";
+
+    /**
+     * The value of the 'notifications.compression' property disabling the compression.
+     */
+    public static final String NONE = "none";
+
+    public static final PayloadCompressor GZIP = new GzipPayloadCompressor(getMaxSize());
+    public static final PayloadCompressor LZ4 = new Lz4PayloadCompressor(getMaxSize());
+    public static final PayloadCompressor ZSTD = new ZstdPayloadCompressor(3, getMaxSize());
+
+    private static final Map<String, PayloadCompressor> compressors = new ConcurrentHashMap<>();
+
+    static {
+        register(GZIP);
+        register(LZ4);
+        register(ZSTD);
+    }
+
+    private PayloadCompressors() {
+    }
+
+    /**
+     * Registers a compressor, replacing the one registered for the same encoding if any.
+     *
+     * @param compressor the compressor to be registered
+     */
+    public static void register(PayloadCompressor compressor) {
+        compressors.put(compressor.getEncoding().toLowerCase(), compressor);
+    }
+
+    /**
+     * Returns the compressor the producers compress with, named by the 'notifications.compression' property.
+     *
+     * @return the default compressor, or null if the compression is disabled
+     */
+    public static PayloadCompressor getDefault() {
+        String encoding = Properties.get("notifications.compression");
+        if (encoding == null || encoding.isEmpty() || NONE.equalsIgnoreCase(encoding)) {
+            return null;
+        }
+        PayloadCompressor compressor = compressors.get(encoding.toLowerCase());
+        if (compressor == null) {
+            System.err.println(String.format("Unknown compression %s, the payloads are sent uncompressed", encoding));
+        }
+        return compressor;
+    }
+
+    /**
+     * Returns the payload size, in bytes, from which the payloads are compressed,
+     * set through the 'notifications.compression.threshold' property.
+     *
+     * @return the compression threshold
+     */
+    public static int getThreshold() {
+        return Integer.parseInt(Properties.get("notifications.compression.threshold"));
+    }
+
+    /**
+     * Returns the largest original size, in bytes, of a compressed payload,
+     * set through the 'notifications.compression.max_size' property: the consumers reject the larger ones
+     * instead of allocating the size read from the payload, or of inflating it without a bound.
+     *
+     * @return the maximum decompressed size
+     */
+    public static int getMaxSize() {
+        return Integer.parseInt(Properties.get("notifications.compression.max_size"));
+    }
+
+    /**
+     * Returns the compressor registered for the given encoding. A null encoding stands for no compression.
+     *
+     * @param encoding the content encoding of the message
+     * @return the compressor, or null if the message is not compressed
+     * @throws NotificationException if no compressor is registered for the encoding
+     */
+    public static PayloadCompressor forEncoding(String encoding) throws NotificationException {
+        if (encoding == null || encoding.isEmpty() || "identity".equalsIgnoreCase(encoding)) {
+            return null;
+        }
+        PayloadCompressor compressor = compressors.get(encoding.toLowerCase());
+        if (compressor == null) throw new NotificationException("No compressor registered for content encoding " + encoding);
+        return compressor;
+    }
+
+    /**
+     * Returns the payload decompressed according to the given encoding.
+     *
+     * @param encoding the content encoding of the message
+     * @param payload the payload as received
+     * @return the decompressed payload
+     * @throws NotificationException
+     */
+    public static byte[] decompress(String encoding, byte[] payload) throws NotificationException {
+        PayloadCompressor compressor = forEncoding(encoding);
+        return compressor != null && payload != null ? compressor.decompress(payload) : payload;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.example.notificationdemo.notifications.metrics.NotificationMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PayloadEncoder is the pipeline the producers run the bodies through: the body is serialized
+ * by a {@link PayloadSerializer} and then, if a {@link PayloadCompressor} is set and the payload reaches the threshold,
+ * compressed. Small payloads are left alone, since compressing them costs CPU and saves close to nothing.
+ * Encoders are immutable, so they can be shared; two encoders are equal when they produce the same payloads.
+ * The time spent encoding and the size of the encoded payloads are recorded to the {@link NotificationMetrics}.
+ */
+public class PayloadEncoder {
+
+    private final PayloadSerializer serializer;
+    private final PayloadCompressor compressor;
+    private final int threshold;
+    private final Timer encodeTimer;
+    private final DistributionSummary payloadSize;
+    private final DistributionSummary compressedPayloadSize;
+
+    /**
+     * Returns a new {@link PayloadEncoder} with the default codec and compression,
+     * set through the 'notifications.codec' and 'notifications.compression' properties.
+     *
+     * @return the default encoder
+     */
+    public static PayloadEncoder fromProperties() {
+        PayloadCompressor compressor = PayloadCompressors.getDefault();
+        return new PayloadEncoder(PayloadCodecs.getDefault(), compressor, compressor != null ? PayloadCompressors.getThreshold() : 0);
+    }
+
+    /**
+     * Constructor for {@link PayloadEncoder}.
+     *
+     * @param serializer the payload serializer
+     * @param compressor the payload compressor, null not to compress
+     * @param threshold the payload size, in bytes, from which the payloads are compressed
+     */
+    public PayloadEncoder(PayloadSerializer serializer, PayloadCompressor compressor, int threshold) {
+        this.serializer = serializer;
+        this.compressor = compressor;
+        this.threshold = threshold;
+        String encoding = compressor != null ? compressor.getEncoding() : null;
+        this.encodeTimer = NotificationMetrics.serializationTimer(serializer.getContentType(), encoding);
+        this.payloadSize = NotificationMetrics.payloadSize(serializer.getContentType(), null);
+        this.compressedPayloadSize = compressor != null ? NotificationMetrics.payloadSize(serializer.getContentType(), encoding) : null;
+    }
+
+    /**
+     * Returns a copy of this encoder serializing through the given serializer.
+     *
+     * @param serializer the payload serializer
+     * @return the new encoder
+     */
+    public PayloadEncoder withSerializer(PayloadSerializer serializer) {
+        return new PayloadEncoder(serializer, this.compressor, this.threshold);
+    }
+
+    /**
+     * Returns a copy of this encoder compressing through the given compressor.
+     *
+     * @param compressor the payload compressor, null not to compress
+     * @param threshold the payload size, in bytes, from which the payloads are compressed
+     * @return the new encoder
+     */
+    public PayloadEncoder withCompressor(PayloadCompressor compressor, int threshold) {
+        return new PayloadEncoder(this.serializer, compressor, threshold);
+    }
+
+    /**
+     * Serializes and, if needed, compresses the body.
+     *
+     * @param body the object to be encoded
+     * @return the encoded payload
+     * @throws NotificationException
+     */
+    public EncodedPayload encode(Object body) throws NotificationException {
+        long start = System.nanoTime();
+        byte[] payload = serializer.serialize(body);
+        if (compressor != null && payload.length >= threshold) {
+            byte[] compressed = compressor.compress(payload);
+            // incompressible payloads are sent as they are
+            if (compressed.length < payload.length) {
+                encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                compressedPayloadSize.record(compressed.length);
+                return new EncodedPayload(compressed, serializer.getContentType(), compressor.getEncoding(), serializer.isBinary());
+            }
+        }
+        encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        payloadSize.record(payload.length);
+        return new EncodedPayload(payload, serializer.getContentType(), null, serializer.isBinary());
+    }
+
+    public PayloadSerializer getSerializer() {
+        return serializer;
+    }
+
+    public PayloadCompressor getCompressor() {
+        return compressor;
+    }
+
+    public boolean isCompressing() {
+        return compressor != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PayloadEncoder)) return false;
+        PayloadEncoder that = (PayloadEncoder) o;
+        return threshold == that.threshold && serializer == that.serializer && compressor == that.compressor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(serializer), System.identityHashCode(compressor), threshold);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+
+/**
+ * PayloadSerializer turns the bodies issued by the producers into the bytes sent on the wire.
+ * Implementations are shared by all the producers, so they must be thread safe.
+ */
+public interface PayloadSerializer {
+
+    /**
+     * Returns the MIME type of the serialized payloads, carried along with every message
+     * so that the consumers can pick the matching {@link PayloadCodec}.
+     *
+     * @return the content type
+     */
+    String getContentType();
+
+    /**
+     * Returns whether the payloads are binary, rather than UTF-8 text.
+     *
+     * @return true if the payloads are binary
+     */
+    boolean isBinary();
+
+    /**
+     * Serializes the body straight to bytes, with no intermediate {@link String}.
+     *
+     * @param body the object to be serialized
+     * @return the serialized payload
+     * @throws NotificationException
+     */
+    byte[] serialize(Object body) throws NotificationException;
+
+    /**
+     * Serializes the body to a {@link String}, for the brokers whose API only accepts text messages.
+     * Binary payloads are Base64 encoded.
+     *
+     * @param body the object to be serialized
+     * @return the serialized payload
+     * @throws NotificationException
+     */
+    String serializeToString(Object body) throws NotificationException;
+}
@@ -0,0 +1,37 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * PayloadTextDeserializer is the Kafka {@link Deserializer} of the record values:
+ * it decompresses the payload according to the record content encoding header, if any,
+ * picks the {@link PayloadCodec} through the record content type header and returns the payload as JSON text.
+ */
+public class PayloadTextDeserializer implements Deserializer<String> {
+
+    @Override
+    public String deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public String deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) return null;
+        try {
+            return PayloadCodecs.toText(header(headers, PayloadCodecs.CONTENT_TYPE_HEADER), header(headers, PayloadCompressors.CONTENT_ENCODING_HEADER), data);
+        } catch (NotificationException e) {
+            throw new SerializationException(e.getMessage());
+        }
+    }
+
+    private static String header(Headers headers, String name) {
+        Header header = headers != null ? headers.lastHeader(name) : null;
+        return header != null && header.value() != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.notificationdemo.notifications.serialization;
+
+import com.example.notificationdemo.notifications.NotificationException;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+
+/**
+ * ZstdPayloadCompressor is the {@link PayloadCompressor} for the Zstandard format:
+ * it compresses about as much as gzip at a fraction of its CPU cost.
+ */
+public class ZstdPayloadCompressor implements PayloadCompressor {
+
+    private final int level;
+    private final int maxSize;
+
+    /**
+     * Constructor for {@link ZstdPayloadCompressor}.
+     *
+     * @param level the compression level, from 1 (fastest) to 22 (smallest)
+     * @param maxSize the largest original size, in bytes, of the payloads it decompresses
+     */
+    public ZstdPayloadCompressor(int level, int maxSize) {
+        this.level = level;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String getEncoding() {
+        return "zstd";
+    }
+
+    @Override
+    public byte[] compress(byte[] payload) throws NotificationException {
+        try {
+            return Zstd.compress(payload, level);
+        } catch (ZstdException e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] payload) throws NotificationException {
+        try {
+            // the original size is recorded in the frame header
+            long size = Zstd.decompressedSize(payload);
+            if (size <= 0 || size > Integer.MAX_VALUE) throw new NotificationException("Zstd payload has no valid content size");
+            if (size > maxSize) throw new NotificationException(String.format("Zstd payload declares an original size of %d bytes, larger than %d", size, maxSize));
+            return Zstd.decompress(payload, (int) size);
+        } catch (ZstdException e) {
+            throw new NotificationException(e.getMessage());
+        }
+    }
+}
@@ -1,21 +1,37 @@
 package com.example.notificationdemo.utils;
 
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * ContinuosJob abstract class implements a periodic job to be executed without blocking any {@link Thread}.
+ * Besides the fixed rate execution, the job can be started in drain mode: it is executed again as soon as it is done
+ * as long as it finds work to do, and it backs off only while there is nothing to do.
+ * Every job has its own single threaded scheduler: a virtual thread one if the 'consumers.threads' property
+ * is set to 'virtual', so that thousands of mostly idle jobs don't take thousands of platform threads.
+ * A started job is registered to the {@link JobRuntime}, which stops it gracefully on shutdown
+ * and whose shared scheduler runs the short housekeeping tasks of the job.
  */
-public abstract class ContinuousJob {
+public abstract class ContinuousJob implements Drainable {
 
-    protected ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    protected ScheduledExecutorService scheduler = SharedExecutors.newJobScheduler(getClass().getSimpleName());
     protected long interval = 1000;
+    protected long idleBackoff = Long.parseLong(Properties.get("consumers.idle_backoff"));
+    protected long maxIdleBackoff = Long.parseLong(Properties.get("consumers.max_idle_backoff"));
+    protected long errorBackoff = Long.parseLong(Properties.get("consumers.error_backoff"));
+    private long currentBackoff;
+    private volatile boolean stopped;
+    private final List<ScheduledFuture<?>> housekeeping = new CopyOnWriteArrayList<>();
 
     /**
      * Executes the job in a cyclic way pausing any defined interval without blocking any {@link Thread}.
      */
     public void start() {
+        register();
         scheduler.scheduleAtFixedRate(() -> doWork(),0, this.interval, TimeUnit.MILLISECONDS);
     }
 
@@ -25,6 +41,7 @@ public abstract class ContinuousJob {
      * @param interval the interval of time amid the various cyclic executions
      */
     public void start(long interval) {
+        register();
         scheduler.scheduleAtFixedRate(() -> doWork(),0, interval, TimeUnit.MILLISECONDS);
     }
 
@@ -35,6 +52,7 @@ public abstract class ContinuousJob {
      * @param interval the interval of time amid the various cyclic executions
      */
     public void start(Runnable job, long interval) {
+        register();
         scheduler.scheduleAtFixedRate(job,0, interval, TimeUnit.MILLISECONDS);
     }
 
@@ -46,17 +64,108 @@ public abstract class ContinuousJob {
      * @param initialDelay the initial delay for the first execution
      */
     public void start(Runnable job, long interval, long initialDelay) {
+        register();
         scheduler.scheduleAtFixedRate(job,initialDelay, interval, TimeUnit.MILLISECONDS);
     }
 
 
+    /**
+     * Executes a short housekeeping task of the job periodically on the scheduler shared by all the jobs,
+     * until the job is closed. The task keeps running while the job drains, after it has been stopped.
+     *
+     * @param task the task to be executed periodically, which must be short, like a single broker request
+     * @param interval the interval of time amid the various executions
+     */
+    public void startHousekeeping(Runnable task, long interval) {
+        register();
+        this.housekeeping.add(JobRuntime.getInstance().getScheduler().scheduleAtFixedRate(task, interval, interval, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Registers the job to the {@link JobRuntime}, to be stopped gracefully on shutdown.
+     */
+    protected void register() {
+        JobRuntime.getInstance().registerConsumer(this);
+    }
+
+    /**
+     * Executes the job in drain mode: the job is executed again right after it completes as long as it finds work to do.
+     * When it finds nothing, the next execution is delayed starting from the idle backoff and doubling the delay,
+     * up to the max idle backoff, until some work shows up again.
+     * The drain mode is used when the 'consumers.drain.enabled' property is set to 'true'.
+     */
+    public void startDraining() {
+        register();
+        this.currentBackoff = this.idleBackoff;
+        scheduler.execute(this::drainLoop);
+    }
+
+    private void drainLoop() {
+        if (this.stopped) {
+            return;
+        }
+        long delay;
+        try {
+            if (drain() > 0) {
+                this.currentBackoff = this.idleBackoff;
+                delay = 0;
+            } else {
+                delay = this.currentBackoff;
+                this.currentBackoff = Math.min(Math.max(this.currentBackoff * 2, this.idleBackoff), this.maxIdleBackoff);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            delay = this.errorBackoff;
+        }
+        try {
+            scheduler.schedule(this::drainLoop, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the job has been stopped
+        }
+    }
+
+    /**
+     * Returns whether the job is started in drain mode, as set by the 'consumers.drain.enabled' property.
+     *
+     * @return true if the job must be started in drain mode
+     */
+    protected static boolean isDrainEnabled() {
+        return Boolean.parseBoolean(Properties.get("consumers.drain.enabled"));
+    }
+
     /**
      * Stops the periodic execution of the Job.
+     * The running execution, if any, is completed, while the next one, even if already scheduled, doesn't run.
      */
+    @Override
     public void stop() {
+        this.stopped = true;
         scheduler.shutdown();
     }
 
+    /**
+     * Waits for the running execution of the job, if any, to complete after the job has been stopped.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if the job completed in time
+     * @throws InterruptedException
+     */
+    @Override
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        return scheduler.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the housekeeping tasks and removes the job from the {@link JobRuntime}.
+     * Jobs holding broker clients override it to release them.
+     */
+    @Override
+    public void close() {
+        housekeeping.forEach(task -> task.cancel(false));
+        housekeeping.clear();
+        JobRuntime.getInstance().unregister(this);
+    }
+
     /**
      * Sets the interval to wait until the next iteration of the Job.
      *
@@ -71,4 +180,16 @@ public abstract class ContinuousJob {
      */
     public abstract void doWork();
 
+    /**
+     * Defines the job to be done in drain mode.
+     * It returns the number of items processed, zero meaning there was nothing to do and the job can back off.
+     * By default it performs {@link #doWork()} and always lets the job back off.
+     *
+     * @return the number of items processed
+     */
+    public int drain() {
+        doWork();
+        return 0;
+    }
+
 }
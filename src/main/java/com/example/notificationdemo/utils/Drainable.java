@@ -0,0 +1,49 @@
+package com.example.notificationdemo.utils;
+
+/**
+ * Drainable is a consumer which can be stopped gracefully, in three steps:
+ * it stops taking new messages, it completes the messages it has already taken and it releases its resources.
+ * The steps are separated so that the {@link JobRuntime} can stop all the consumers at once
+ * and let them drain in parallel, within a single timeout.
+ */
+public interface Drainable extends AutoCloseable {
+
+    /**
+     * Stops taking new messages. The messages already taken keep being consumed.
+     */
+    void stop();
+
+    /**
+     * Waits for the messages already taken to be consumed.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if all the messages have been consumed in time
+     * @throws InterruptedException
+     */
+    boolean awaitTermination(long timeout) throws InterruptedException;
+
+    /**
+     * Releases the connections and the clients of the consumer.
+     */
+    @Override
+    void close();
+
+    /**
+     * Stops the consumer gracefully: it stops taking new messages, waits up to the given timeout
+     * for the messages already taken to be consumed and releases its resources.
+     *
+     * @param timeout the maximum time in milliseconds to wait for the messages already taken
+     * @return true if all the messages have been consumed in time
+     */
+    default boolean stop(long timeout) {
+        stop();
+        boolean drained = false;
+        try {
+            drained = awaitTermination(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        close();
+        return drained;
+    }
+}
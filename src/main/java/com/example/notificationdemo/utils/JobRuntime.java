@@ -0,0 +1,215 @@
+package com.example.notificationdemo.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * JobRuntime is the process-wide registry of the running consumers, producers and shared connections,
+ * and it owns the scheduler shared by the periodic housekeeping tasks of the consumers.
+ * On shutdown they are stopped in order, so that nothing is lost and nothing leaks:
+ * first all the consumers stop taking messages and complete, within the 'jobs.shutdown.timeout',
+ * the messages already taken, then they are closed, then the producers are closed (flushing what they buffer)
+ * in the reverse order of their registration and finally the shared connections are closed.
+ */
+public class JobRuntime {
+
+    private static volatile JobRuntime instance;
+
+    private final Set<Drainable> consumers = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final Set<AutoCloseable> producers = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final Set<AutoCloseable> resources = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final ScheduledExecutorService scheduler;
+    private final long shutdownTimeout;
+    private volatile boolean shutdown;
+
+    /**
+     * Returns the shared {@link JobRuntime}, configured through the 'jobs.*' properties.
+     *
+     * @return the shared JobRuntime
+     */
+    public static JobRuntime getInstance() {
+        if (instance == null) {
+            synchronized (JobRuntime.class) {
+                if (instance == null) {
+                    instance = new JobRuntime(
+                            Integer.parseInt(Properties.get("jobs.scheduler.threads")),
+                            Long.parseLong(Properties.get("jobs.shutdown.timeout")));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Basic constructor for {@link JobRuntime}.
+     *
+     * @param schedulerThreads the number of threads of the shared scheduler
+     * @param shutdownTimeout the maximum time in milliseconds the consumers are given to drain on shutdown
+     */
+    public JobRuntime(int schedulerThreads, long shutdownTimeout) {
+        this.scheduler = Executors.newScheduledThreadPool(schedulerThreads, SharedExecutors.daemonThreadFactory("jobs-scheduler"));
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    /**
+     * Returns the scheduler shared by the periodic housekeeping tasks of the consumers.
+     * The tasks must be short, like a single broker request, since they share a few threads.
+     *
+     * @return the shared scheduler
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds the consumers are given to drain on shutdown,
+     * which is also the time the producers are given to complete their pending sends.
+     *
+     * @return the shutdown timeout
+     */
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    /**
+     * Registers a consumer to be stopped on shutdown. Registering it again has no effect.
+     *
+     * @param consumer the consumer
+     */
+    public void registerConsumer(Drainable consumer) {
+        consumers.add(consumer);
+    }
+
+    /**
+     * Registers a producer to be closed on shutdown, once the consumers are stopped. Registering it again has no effect.
+     * Only the producers owning resources of their own are registered, since the runtime holds them until they are closed.
+     *
+     * @param producer the producer
+     */
+    public void registerProducer(AutoCloseable producer) {
+        producers.add(producer);
+    }
+
+    /**
+     * Registers a connection shared by several producers and consumers, to be closed last on shutdown.
+     *
+     * @param resource the shared connection
+     */
+    public void registerResource(AutoCloseable resource) {
+        resources.add(resource);
+    }
+
+    /**
+     * Removes a consumer, a producer or a shared connection which has been closed on its own.
+     *
+     * @param registered the registered element
+     */
+    public void unregister(Object registered) {
+        consumers.remove(registered);
+        producers.remove(registered);
+        resources.remove(registered);
+    }
+
+    /**
+     * Returns the number of registered consumers.
+     *
+     * @return the number of consumers
+     */
+    public int getConsumers() {
+        return consumers.size();
+    }
+
+    /**
+     * Returns the number of registered producers.
+     *
+     * @return the number of producers
+     */
+    public int getProducers() {
+        return producers.size();
+    }
+
+    /**
+     * Returns whether the runtime has been shut down.
+     *
+     * @return true if the runtime has been shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Stops all the consumers, giving them up to the 'jobs.shutdown.timeout' to drain,
+     * then closes the producers and the shared connections.
+     *
+     * @return true if all the consumers drained in time
+     */
+    public boolean shutdown() {
+        return shutdown(shutdownTimeout);
+    }
+
+    /**
+     * Stops all the consumers, giving them up to the given timeout to drain,
+     * then closes the producers and the shared connections.
+     *
+     * @param timeout the maximum time in milliseconds the consumers are given to drain
+     * @return true if all the consumers drained in time
+     */
+    public synchronized boolean shutdown(long timeout) {
+        if (shutdown) return true;
+        shutdown = true;
+
+        List<Drainable> stopping = reversed(consumers);
+        for (Drainable consumer : stopping) {
+            try {
+                consumer.stop();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        boolean drained = true;
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Drainable consumer : stopping) {
+            try {
+                if (!consumer.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()))) {
+                    System.err.println("Consumer " + consumer + " stopped with messages still being consumed");
+                    drained = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drained = false;
+                break;
+            }
+        }
+        stopping.forEach(JobRuntime::closeQuietly);
+        // the housekeeping tasks, like the extension of the SQS visibility timeouts, run until the consumers are closed
+        scheduler.shutdownNow();
+        reversed(producers).forEach(JobRuntime::closeQuietly);
+        reversed(resources).forEach(JobRuntime::closeQuietly);
+        consumers.clear();
+        producers.clear();
+        resources.clear();
+        return drained;
+    }
+
+    private static <E> List<E> reversed(Set<E> registered) {
+        List<E> snapshot;
+        synchronized (registered) {
+            snapshot = new ArrayList<>(registered);
+        }
+        Collections.reverse(snapshot);
+        return snapshot;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.notificationdemo.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * OffsetTracker keeps track of a sequence of offsets (Kafka offsets, AMQP delivery tags...) whose processing
+ * can complete out of order. It tells which is the highest offset up to which every tracked offset completed,
+ * that is the only one which can be safely acknowledged to the broker.
+ * Offsets can be completed from any thread.
+ */
+public class OffsetTracker {
+
+    private final ConcurrentNavigableMap<Long, Boolean> pending = new ConcurrentSkipListMap<>();
+
+    /**
+     * Starts tracking the given offset. Offsets must be tracked in ascending order.
+     *
+     * @param offset the offset handed over to processing
+     */
+    public void track(long offset) {
+        pending.put(offset, Boolean.FALSE);
+    }
+
+    /**
+     * Marks the given offset as completed.
+     *
+     * @param offset the offset whose processing completed
+     */
+    public void complete(long offset) {
+        pending.replace(offset, Boolean.TRUE);
+    }
+
+    /**
+     * Forgets the completed offsets at the head of the sequence and returns the highest of them.
+     *
+     * @return the highest offset up to which every tracked offset completed, or -1 if no new offset completed
+     */
+    public long pollContiguous() {
+        long contiguous = -1;
+        Map.Entry<Long, Boolean> head;
+        while ((head = pending.firstEntry()) != null && head.getValue()) {
+            contiguous = head.getKey();
+            pending.remove(head.getKey());
+        }
+        return contiguous;
+    }
+
+    /**
+     * Returns the number of tracked offsets not acknowledged yet.
+     *
+     * @return the pending offsets
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Returns whether the given offset is tracked and not acknowledged yet.
+     *
+     * @param offset the offset
+     * @return true if the offset is still tracked
+     */
+    public boolean isTracked(long offset) {
+        return pending.containsKey(offset);
+    }
+
+    /**
+     * Returns whether some tracked offset is still being processed.
+     *
+     * @return true if some tracked offset didn't complete yet
+     */
+    public boolean hasIncomplete() {
+        return pending.containsValue(Boolean.FALSE);
+    }
+
+    /**
+     * Forgets all the tracked offsets.
+     */
+    public void clear() {
+        pending.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.notificationdemo.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OrderedWorkerPool runs tasks in parallel while keeping the submission order of the tasks sharing the same ordering key.
+ * Each key is bound to one of the lanes of the pool, and each lane runs its tasks one at a time.
+ * The lanes are served by virtual threads if the 'consumers.threads' property is set to 'virtual'.
+ */
+public class OrderedWorkerPool {
+
+    private final ExecutorService[] lanes;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Basic constructor for {@link OrderedWorkerPool}.
+     *
+     * @param name the prefix of the worker thread names
+     * @param size the number of lanes, each one served by its own worker
+     */
+    public OrderedWorkerPool(String name, int size) {
+        this.lanes = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            this.lanes[i] = Executors.newSingleThreadExecutor(SharedExecutors.consumerThreadFactory(name + "-" + i));
+        }
+    }
+
+    /**
+     * Submits a task to the lane bound to the given ordering key.
+     *
+     * @param orderingKey the key whose tasks must run in submission order
+     * @param task the task to be run
+     */
+    public void submit(Object orderingKey, Runnable task) {
+        int lane = Math.floorMod(orderingKey == null ? 0 : orderingKey.hashCode(), lanes.length);
+        pending.incrementAndGet();
+        try {
+            lanes[lane].execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of tasks submitted and not completed yet.
+     *
+     * @return the pending tasks
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops accepting tasks and waits for the submitted ones to complete.
+     *
+     * @param timeout the maximum time in milliseconds to wait for
+     * @return true if all the submitted tasks completed in time
+     * @throws InterruptedException
+     */
+    public boolean shutdown(long timeout) throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
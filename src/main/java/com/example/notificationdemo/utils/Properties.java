@@ -14,6 +14,8 @@ import java.io.IOException;
  * Unlike Spring, it is not able to compose the properties this way:
  * my.property.four=${ENV_VAR_NAME_3:default}/the_path/continues/here
  *
+ * Like Spring, a JVM system property with the same name (-Dmy.property.one=other) overrides the file value.
+ *
  */
 public class Properties {
 
@@ -31,13 +33,15 @@ public class Properties {
 
     /**
      * Returns a property value by specifying its name.
-     * The property is fetched from "src/main/resources/application.properties"
-     * or from another source if specified.
+     * The property is fetched from the JVM system properties first, then
+     * from "src/main/resources/application.properties" or from another source if specified.
      *
      * @param propertyName the name of the property to be read from file
      * @return the value of the property
      */
     public static String get(String propertyName) {
+        String override = System.getProperty(propertyName);
+        if (override != null) return override;
         if (prop == null) {
             try {
                 prop = readPropertiesFile(PROPERTIES_FILE_PATH);
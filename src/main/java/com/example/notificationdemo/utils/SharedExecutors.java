@@ -0,0 +1,145 @@
+package com.example.notificationdemo.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SharedExecutors holds the executors shared by the whole application,
+ * so that every component doesn't have to allocate its own threads.
+ * When the 'consumers.threads' property is set to 'virtual' the consumer jobs, their pollers and their workers
+ * run on virtual threads, all of them multiplexed on the small pool of carrier threads of the JVM.
+ */
+public class SharedExecutors {
+
+    private static volatile ExecutorService blockingIo;
+    private static volatile ExecutorService handlers;
+    private static volatile Boolean virtualThreads;
+
+    // the JVM property sizing the carrier threads, read once when the first virtual thread is started
+    private static final String CARRIERS_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+
+    private SharedExecutors() {
+    }
+
+    /**
+     * Returns the executor used to offload the blocking I/O calls of the channels
+     * which don't provide a non-blocking client.
+     * Its threads are daemon ones, so they never prevent the JVM from exiting.
+     *
+     * @return the shared executor for blocking I/O
+     */
+    public static ExecutorService blockingIo() {
+        if (blockingIo == null) {
+            synchronized (SharedExecutors.class) {
+                if (blockingIo == null) {
+                    blockingIo = Executors.newCachedThreadPool(daemonThreadFactory("notifications-io"));
+                }
+            }
+        }
+        return blockingIo;
+    }
+
+    /**
+     * Returns the executor running the message handlers of the consumers which process a batch concurrently.
+     * With virtual threads every handler runs on a virtual thread of its own,
+     * otherwise the handlers share a cached pool of daemon threads.
+     *
+     * @return the shared executor for the message handlers
+     */
+    public static ExecutorService handlers() {
+        if (handlers == null) {
+            synchronized (SharedExecutors.class) {
+                if (handlers == null) {
+                    handlers = newConsumerExecutor("notifications-handler");
+                }
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * Returns whether the consumers run on virtual threads, as set by the 'consumers.threads' property.
+     *
+     * @return true if the consumers run on virtual threads
+     */
+    public static boolean isVirtualThreads() {
+        if (virtualThreads == null) {
+            synchronized (SharedExecutors.class) {
+                if (virtualThreads == null) {
+                    boolean virtual = "virtual".equals(Properties.get("consumers.threads"));
+                    String carriers = Properties.get("consumers.virtual.carriers");
+                    if (virtual && carriers != null && System.getProperty(CARRIERS_PROPERTY) == null) {
+                        System.setProperty(CARRIERS_PROPERTY, carriers);
+                    }
+                    virtualThreads = virtual;
+                }
+            }
+        }
+        return virtualThreads;
+    }
+
+    /**
+     * Returns a new single threaded scheduler for a {@link ContinuousJob}.
+     * With virtual threads the scheduler thread is a virtual one: while the job waits for its next execution,
+     * or for the broker, it doesn't hold any carrier thread.
+     * Once shut down the scheduler drops the delayed executions, like the next one of a job backing off,
+     * and completes only the running one.
+     *
+     * @param prefix the prefix of the thread name
+     * @return the job scheduler
+     */
+    public static ScheduledExecutorService newJobScheduler(String prefix) {
+        ScheduledThreadPoolExecutor scheduler = isVirtualThreads()
+                ? new ScheduledThreadPoolExecutor(1, consumerThreadFactory(prefix))
+                : new ScheduledThreadPoolExecutor(1);
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return scheduler;
+    }
+
+    /**
+     * Returns a new executor for the long running tasks of a consumer, like its pollers:
+     * it starts a virtual thread per task with virtual threads, a cached pool of daemon threads otherwise.
+     *
+     * @param prefix the prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newConsumerExecutor(String prefix) {
+        if (isVirtualThreads()) {
+            return Executors.newThreadPerTaskExecutor(consumerThreadFactory(prefix));
+        }
+        return Executors.newCachedThreadPool(daemonThreadFactory(prefix));
+    }
+
+    /**
+     * Returns a {@link ThreadFactory} for the consumer threads named '<prefix>-<number>':
+     * virtual threads if the 'consumers.threads' property is set to 'virtual', daemon threads otherwise.
+     *
+     * @param prefix the prefix of the thread names
+     * @return the thread factory
+     */
+    public static ThreadFactory consumerThreadFactory(String prefix) {
+        if (isVirtualThreads()) {
+            return Thread.ofVirtual().name(prefix + "-", 1).factory();
+        }
+        return daemonThreadFactory(prefix);
+    }
+
+    /**
+     * Returns a {@link ThreadFactory} creating daemon threads named '<prefix>-<number>'.
+     *
+     * @param prefix the prefix of the thread names
+     * @return the thread factory
+     */
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}